@@ -0,0 +1,137 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// The operations the JMH suite measures. The model classes live in the default package, which
+// JMH benchmarks may not use and named packages cannot import, so the benchmarks in bench/ look
+// these factories up by name (see bench.Workload). Each factory does its setup eagerly and
+// returns the operation to time. Everything runs on random weights, so no gpt2_weights.json is needed.
+public final class Workloads {
+    private Workloads() {
+    }
+
+    // (rows x inner) . (inner x cols)
+    public static Supplier<Object> matMul(int rows, int inner, int cols, String precision) {
+        Precision p = Precision.valueOf(precision);
+        Matrix a = Matrix.random(rows, inner, 0.0, 1.0, p);
+        Matrix b = Matrix.random(inner, cols, 0.0, 0.02, p);
+        return () -> a.matMul(b);
+    }
+
+    public static Supplier<Object> softmax(int rows, int cols, String precision) {
+        Matrix x = Matrix.random(rows, cols, 0.0, 1.0, Precision.valueOf(precision));
+        return () -> Matrix.softmax(x);
+    }
+
+    public static Supplier<Object> layerNorm(int rows, int dim, String precision) {
+        Precision p = Precision.valueOf(precision);
+        LayerNorm norm = new LayerNorm(dim, p);
+        Matrix x = Matrix.random(rows, dim, 0.0, 1.0, p);
+        return () -> norm.forward(x);
+    }
+
+    public static Supplier<Object> gelu(int rows, int dim, String precision) {
+        Matrix x = Matrix.random(rows, dim, 0.0, 1.0, Precision.valueOf(precision));
+        return () -> GELU.forward(x);
+    }
+
+    // GPT-2 small attention layer (c_attn, causal attention, c_proj) over seqLength positions
+    public static Supplier<Object> attention(int seqLength, String precision) {
+        Precision p = Precision.valueOf(precision);
+        MultiHeadAttention attention = new MultiHeadAttention(768, 768, 1024, 0.0, 12, p);
+        Matrix x = Matrix.random(seqLength, 768, 0.0, 1.0, p);
+        return () -> attention.forward(x);
+    }
+
+    // Full GPT-2 small forward pass over a prompt of seqLength tokens
+    public static Supplier<Object> modelForward(int seqLength, String precision) {
+        GPTModel model = new GPTModel(50257, 768, 1024, 12, 12, 0.0, Precision.valueOf(precision));
+        int[] tokens = new Random(1).ints(seqLength, 0, 50257).toArray();
+        return () -> model.forward(tokens);
+    }
+
+    // Encodes about 64 KB of English-like text; cacheCapacity 0 measures uncached BPE merging
+    public static Supplier<Object> encode(int cacheCapacity) {
+        BytePairEncoding.Encoder encoder = encoder(cacheCapacity);
+        String text = corpus();
+        return () -> encoder.encode(text);
+    }
+
+    public static Supplier<Object> decode() {
+        BytePairEncoding.Encoder encoder = encoder(0);
+        List<Integer> tokens = encoder.encode(corpus());
+        return () -> encoder.decode(tokens);
+    }
+
+    private static String corpus() {
+        String[] words = ("the quick brown fox jumps over the lazy dog while a thousand tokens stream through "
+                          + "the attention layers of a small transformer model, and everyone wonders whether "
+                          + "1984 was really that long ago; it's a question we'll leave for later").split(" ");
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1 << 16) {
+            text.append(words[random.nextInt(words.length)]);
+            text.append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+
+    // Byte-level vocabulary plus 400 merges learned from the corpus, standing in for the GPT-2 files
+    private static BytePairEncoding.Encoder encoder(int cacheCapacity) {
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            vocab.put(bytes.get(b), b);
+        }
+        Map<List<String>, Integer> words = new HashMap<>();
+        for (String word : corpus().split("(?= )")) {
+            StringBuilder mapped = new StringBuilder();
+            for (byte b : word.getBytes(java.nio.charset.StandardCharsets.UTF_8)) {
+                mapped.append(bytes.get(b & 0xFF));
+            }
+            words.merge(Arrays.asList(mapped.toString().split("")), 1, Integer::sum);
+        }
+        List<BytePairEncoding.Pair<String, String>> merges = new ArrayList<>();
+        for (int m = 0; m < 400; m++) {
+            Map<BytePairEncoding.Pair<String, String>, Integer> pairs = new HashMap<>();
+            words.forEach((symbols, count) -> {
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    pairs.merge(new BytePairEncoding.Pair<>(symbols.get(i), symbols.get(i + 1)), count, Integer::sum);
+                }
+            });
+            BytePairEncoding.Pair<String, String> best = null;
+            int bestCount = 0;
+            for (Map.Entry<BytePairEncoding.Pair<String, String>, Integer> pair : pairs.entrySet()) {
+                if (pair.getValue() > bestCount) {
+                    best = pair.getKey();
+                    bestCount = pair.getValue();
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            merges.add(best);
+            vocab.putIfAbsent(best.first + best.second, vocab.size());
+            Map<List<String>, Integer> merged = new HashMap<>();
+            for (Map.Entry<List<String>, Integer> word : words.entrySet()) {
+                List<String> symbols = word.getKey();
+                List<String> out = new ArrayList<>();
+                for (int i = 0; i < symbols.size(); i++) {
+                    if (i + 1 < symbols.size() && symbols.get(i).equals(best.first) && symbols.get(i + 1).equals(best.second)) {
+                        out.add(best.first + best.second);
+                        i++;
+                    } else {
+                        out.add(symbols.get(i));
+                    }
+                }
+                merged.merge(out, word.getValue(), Integer::sum);
+            }
+            words = merged;
+        }
+        return new BytePairEncoding.Encoder(vocab, merges, "replace", cacheCapacity);
+    }
+}
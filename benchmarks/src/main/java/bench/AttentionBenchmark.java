@@ -0,0 +1,42 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One GPT-2 small attention layer (768 dims, 12 heads) over sequences of several lengths
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class AttentionBenchmark {
+    @Param({ "1", "64", "256" })
+    public int seqLength;
+
+    @Param({ "FLOAT64", "FLOAT32" })
+    public String precision;
+
+    private Supplier<Object> attention;
+
+    @Setup
+    public void setup() {
+        attention = Workload.of("attention", seqLength, precision);
+    }
+
+    @Benchmark
+    public Object forward() {
+        return attention.get();
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Row-wise kernels at GPT-2 small widths: softmax over 1024 scores, LayerNorm over 768 dims, GELU over 3072
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class KernelBenchmark {
+    @Param({ "1", "128", "512" })
+    public int rows;
+
+    @Param({ "FLOAT64", "FLOAT32" })
+    public String precision;
+
+    private Supplier<Object> softmax;
+    private Supplier<Object> layerNorm;
+    private Supplier<Object> gelu;
+
+    @Setup
+    public void setup() {
+        softmax = Workload.of("softmax", rows, 1024, precision);
+        layerNorm = Workload.of("layerNorm", rows, 768, precision);
+        gelu = Workload.of("gelu", rows, 3072, precision);
+    }
+
+    @Benchmark
+    public Object softmax() {
+        return softmax.get();
+    }
+
+    @Benchmark
+    public Object layerNorm() {
+        return layerNorm.get();
+    }
+
+    @Benchmark
+    public Object gelu() {
+        return gelu.get();
+    }
+}
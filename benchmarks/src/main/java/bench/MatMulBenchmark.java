@@ -0,0 +1,44 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Matrix products at the GPT-2 small shapes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class MatMulBenchmark {
+    // rows x inner x cols: the c_attn, c_proj, c_fc and mlp c_proj products
+    @Param({ "1x768x2304", "128x768x2304", "128x768x768", "128x768x3072", "128x3072x768" })
+    public String shape;
+
+    @Param({ "FLOAT64", "FLOAT32" })
+    public String precision;
+
+    private Supplier<Object> matMul;
+
+    @Setup
+    public void setup() {
+        String[] dims = shape.split("x");
+        matMul = Workload.of("matMul", Integer.parseInt(dims[0]), Integer.parseInt(dims[1]), Integer.parseInt(dims[2]), precision);
+    }
+
+    @Benchmark
+    public Object forward() {
+        return matMul.get();
+    }
+}
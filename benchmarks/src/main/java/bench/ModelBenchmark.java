@@ -0,0 +1,42 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full GPT-2 small forward pass (124M random weights) over prompts of several lengths
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Xmx4g" })
+public class ModelBenchmark {
+    @Param({ "16", "128", "512" })
+    public int seqLength;
+
+    @Param({ "FLOAT64", "FLOAT32" })
+    public String precision;
+
+    private Supplier<Object> forward;
+
+    @Setup
+    public void setup() {
+        forward = Workload.of("modelForward", seqLength, precision);
+    }
+
+    @Benchmark
+    public Object forward() {
+        return forward.get();
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Encoding and decoding 64 KB of text with a byte-level vocabulary and 400 learned merges
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class TokenizerBenchmark {
+    // 0 disables the BPE cache, so every word is merged from scratch
+    @Param({ "0", "65536" })
+    public int cacheCapacity;
+
+    private Supplier<Object> encode;
+    private Supplier<Object> decode;
+
+    @Setup
+    public void setup() {
+        encode = Workload.of("encode", cacheCapacity);
+        decode = Workload.of("decode");
+    }
+
+    @Benchmark
+    public Object encode() {
+        return encode.get();
+    }
+
+    @Benchmark
+    public Object decode() {
+        return decode.get();
+    }
+}
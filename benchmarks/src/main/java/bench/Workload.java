@@ -0,0 +1,24 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+// Looks up a factory of the default-package Workloads class by name and runs it
+final class Workload {
+    private Workload() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> of(String name, Object... args) {
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i] instanceof Integer ? int.class : args[i].getClass();
+        }
+        try {
+            Method factory = Class.forName("Workloads").getMethod(name, types);
+            return (Supplier<Object>) factory.invoke(null, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set up workload " + name + ".", e);
+        }
+    }
+}
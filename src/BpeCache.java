@@ -0,0 +1,134 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded, thread-safe cache for Encoder.bpe() results. Keys are spread over independently
+// locked segments, each an access-ordered LinkedHashMap that evicts its least recently used
+// entry once full, so concurrent encoders rarely contend and memory stays bounded however
+// varied the traffic. A capacity of 0 disables caching.
+public class BpeCache {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BpeCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity must be non-negative.");
+        }
+        this.capacity = capacity;
+        // Small caches get fewer segments so every segment still holds a useful number of entries
+        int numSegments = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, capacity / 64))));
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            int segmentCapacity = capacity / numSegments + (i < capacity % numSegments ? 1 : 0);
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    // null on a miss
+    public String get(String key) {
+        if (capacity == 0) {
+            misses.increment();
+            return null;
+        }
+        Segment segment = segmentFor(key);
+        String value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(String key, String value) {
+        if (capacity == 0) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Fraction of lookups that hit, 0 before the first lookup
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BpeCache[%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions]",
+                             size(), capacity, getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    private final class Segment extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int segmentCapacity;
+
+        Segment(int segmentCapacity) {
+            super(16, 0.75f, true);
+            this.segmentCapacity = segmentCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
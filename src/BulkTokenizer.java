@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Tokenizes text of any size into a flat little-endian file of token ids (uint16 or int32, no
+// header), ready for FileChannel.map or numpy.memmap. Text is read in chunks that end at a
+// pre-tokenizer-safe boundary, chunks are encoded in parallel, and results are written in order.
+// At most a few chunks per worker are in flight, so memory stays bounded whatever the input size.
+public class BulkTokenizer {
+    public enum TokenFormat {
+        UINT16(2), INT32(4);
+
+        public final int bytes;
+
+        TokenFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final BytePairEncoding.Encoder encoder;
+    private ExecutorService executor = ForkJoinPool.commonPool();
+    private int chunkChars = 1 << 20;
+
+    public BulkTokenizer(BytePairEncoding.Encoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public BulkTokenizer setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    // Target chunk size; a chunk only grows past it when no safe boundary is found
+    public BulkTokenizer setChunkChars(int chunkChars) {
+        if (chunkChars < 16) {
+            throw new IllegalArgumentException("Chunks must hold at least 16 characters.");
+        }
+        this.chunkChars = chunkChars;
+        return this;
+    }
+
+    public Stats tokenize(Path input, Path output, TokenFormat format) throws IOException {
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return tokenize(reader, output, format);
+        }
+    }
+
+    public Stats tokenize(Reader input, Path output, TokenFormat format) throws IOException {
+        long start = System.nanoTime();
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+                                                           : Runtime.getRuntime().availableProcessors();
+        int maxInFlight = 2 * Math.max(1, parallelism);
+        ArrayDeque<Future<int[]>> inFlight = new ArrayDeque<>();
+        long inputBytes = 0;
+        long tokens = 0;
+        long chunks = 0;
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            char[] text = new char[chunkChars];
+            int length = 0;
+            boolean eof = false;
+            while (!eof || length > 0) {
+                // Fill the buffer, doubling it when it holds no safe boundary
+                while (!eof && length < text.length) {
+                    int read = input.read(text, length, text.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                int end = eof ? length : lastBoundary(text, length);
+                if (end <= 0) {
+                    text = Arrays.copyOf(text, text.length * 2);
+                    continue;
+                }
+                String chunk = new String(text, 0, end);
+                System.arraycopy(text, end, text, 0, length - end);
+                length -= end;
+                inputBytes += utf8Length(chunk);
+                chunks++;
+
+                if (inFlight.size() == maxInFlight) {
+                    tokens += write(inFlight.poll(), channel, buffer, format);
+                }
+                inFlight.add(executor.submit(() -> encode(chunk)));
+            }
+            while (!inFlight.isEmpty()) {
+                tokens += write(inFlight.poll(), channel, buffer, format);
+            }
+        } finally {
+            for (Future<int[]> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        return new Stats(inputBytes, tokens, chunks, System.nanoTime() - start);
+    }
+
+    private int[] encode(String chunk) {
+        int[][] ids = { new int[Math.max(16, chunk.length() / 3)] };
+        int[] count = { 0 };
+        encoder.encode(chunk, id -> {
+            if (count[0] == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], ids[0].length * 2);
+            }
+            ids[0][count[0]++] = id;
+        });
+        return Arrays.copyOf(ids[0], count[0]);
+    }
+
+    private static long write(Future<int[]> future, FileChannel channel, ByteBuffer buffer, TokenFormat format)
+            throws IOException {
+        int[] ids;
+        try {
+            ids = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while tokenizing.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Tokenizing a chunk failed.", e.getCause());
+        }
+        for (int id : ids) {
+            if (buffer.remaining() < format.bytes) {
+                drain(buffer, channel);
+            }
+            if (format == TokenFormat.UINT16) {
+                if (id > 0xFFFF) {
+                    throw new IllegalArgumentException("Token id " + id + " does not fit in uint16; use INT32.");
+                }
+                buffer.putShort((short) id);
+            } else {
+                buffer.putInt(id);
+            }
+        }
+        drain(buffer, channel);
+        return ids.length;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // The pre-tokenizer never lets a token run from a non-space character into whitespace, and
+    // whitespace followed by a non-space character only starts a token. So cutting in front of such
+    // whitespace (a non-space, whitespace, non-space triple) gives each side exactly the tokens
+    // the whole text would have there. Returns the last such cut, or 0 if there is none.
+    static int lastBoundary(char[] text, int length) {
+        for (int p = length - 2; p > 0; p--) {
+            if (isSpace(text[p]) && !isSpace(text[p - 1]) && !isSpace(text[p + 1])) {
+                return p;
+            }
+        }
+        return 0;
+    }
+
+    // \s of the pre-tokenizer pattern
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static long utf8Length(String s) {
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public static final class Stats {
+        public final long inputBytes; // UTF-8 size of the text
+        public final long tokens;
+        public final long chunks;
+        public final long nanos;
+
+        Stats(long inputBytes, long tokens, long chunks, long nanos) {
+            this.inputBytes = inputBytes;
+            this.tokens = tokens;
+            this.chunks = chunks;
+            this.nanos = nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0.0 : inputBytes / 1e6 / (nanos / 1e9);
+        }
+
+        public double tokensPerSecond() {
+            return nanos == 0 ? 0.0 : tokens / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f MB -> %d tokens in %d chunks, %.2f s: %.2f MB/s, %.0f tokens/s",
+                                 inputBytes / 1e6, tokens, chunks, nanos / 1e9, megabytesPerSecond(), tokensPerSecond());
+        }
+    }
+
+    // Usage: BulkTokenizer <input.txt> <output.bin> [uint16|int32] [modelsDir]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkTokenizer <input.txt> <output.bin> [uint16|int32] [modelsDir]");
+            return;
+        }
+        TokenFormat format = args.length > 2 ? TokenFormat.valueOf(args[2].toUpperCase()) : TokenFormat.UINT16;
+        BytePairEncoding.Encoder encoder = BytePairEncoding.getEncoder("gpt2", args.length > 3 ? args[3] : "models");
+        Stats stats = new BulkTokenizer(encoder).tokenize(Paths.get(args[0]), Paths.get(args[1]), format);
+        System.out.println(stats);
+    }
+}
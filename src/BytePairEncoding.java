@@ -1,6 +1,11 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.regex.*;
 import java.util.stream.Collectors;
 import com.google.gson.Gson;
@@ -13,8 +18,8 @@ public class BytePairEncoding {
         List<Integer> bs = new ArrayList<>();
         // add ranges of bytes that correspond to printable characters
         for (int i = (int) '!'; i <= (int) '~'; i++) bs.add(i);
-        for (int i = (int) '¡'; i <= (int) '¬'; i++) bs.add(i);
-        for (int i = (int) '®'; i <= (int) 'ÿ'; i++) bs.add(i);
+        for (int i = (int) '\u00a1'; i <= (int) '\u00ac'; i++) bs.add(i);
+        for (int i = (int) '\u00ae'; i <= (int) '\u00ff'; i++) bs.add(i);
 
         List<Integer> cs = new ArrayList<>(bs);
         int n = 0;
@@ -49,134 +54,274 @@ public class BytePairEncoding {
 
     public static class Encoder {
         private final Map<String, Integer> encoder; 
-        private final Map<Integer, String> decoder; 
         private final Map<Integer, String> byteEncoder; 
         private final Map<String, Integer> byteDecoder; 
-        private final Map<Pair<String, String>, Integer> bpeRanks;
-        private final Map<String, String> cache = new HashMap<>(); 
+        private final char[] byteSymbols; // byteEncoder as an array indexed by byte value
+        private final byte[][] tokenBytes; // decoded bytes of every token id, null where the id is unused
+        // Merges as integers: every symbol a merge can involve is interned to an id, and a pair of
+        // ids packed into a long maps to its rank; merging the pair at rank r yields mergedSymbols[r]
+        private final PairRanks pairRanks;
+        private final int[] mergedSymbols;
+        private final int[] charSymbols; // id of each single-char symbol, -1 if it takes part in no merge
+        private final BpeCache cache; // bpe() results, shared by all threads using this encoder
         private final Pattern pattern; 
 
         public Encoder(Map<String, Integer> encoder, List<Pair<String, String>> bpeMerges, String errors) {
+            this(encoder, bpeMerges, errors, BpeCache.DEFAULT_CAPACITY);
+        }
+
+        // cacheCapacity bounds the number of cached bpe() results; 0 disables the cache
+        public Encoder(Map<String, Integer> encoder, List<Pair<String, String>> bpeMerges, String errors, int cacheCapacity) {
+            this.cache = new BpeCache(cacheCapacity);
+            this.byteSymbols = new char[256];
             this.encoder = encoder;
-            this.decoder = encoder.entrySet().stream()
-                    .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)); // reverse the encoder map
             this.byteEncoder = bytesToUnicode(); 
             this.byteDecoder = byteEncoder.entrySet().stream()
                     .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)); // reverse byte mapping
-            this.bpeRanks = new HashMap<>();
+            for (int b = 0; b < 256; b++) {
+                byteSymbols[b] = byteEncoder.get(b).charAt(0);
+            }
+            int maxId = encoder.values().stream().mapToInt(Integer::intValue).max().orElse(-1);
+            this.tokenBytes = new byte[maxId + 1][];
+            for (Map.Entry<String, Integer> token : encoder.entrySet()) {
+                String symbols = token.getKey();
+                byte[] bytes = new byte[symbols.length()];
+                int length = 0;
+                for (int i = 0; i < symbols.length(); i++) {
+                    Integer byteValue = byteDecoder.get(String.valueOf(symbols.charAt(i)));
+                    if (byteValue == null) {
+                        System.err.println("Warning: Character '" + symbols.charAt(i) + "' not found in byteDecoder.");
+                        continue;
+                    }
+                    bytes[length++] = byteValue.byteValue();
+                }
+                tokenBytes[token.getValue()] = Arrays.copyOf(bytes, length);
+            }
+            Map<String, Integer> symbols = new HashMap<>();
+            this.pairRanks = new PairRanks(bpeMerges.size());
+            this.mergedSymbols = new int[bpeMerges.size()];
             for (int i = 0; i < bpeMerges.size(); i++) {
-                bpeRanks.put(bpeMerges.get(i), i); // create rank for each pair
+                Pair<String, String> merge = bpeMerges.get(i);
+                int first = symbols.computeIfAbsent(merge.first, k -> symbols.size());
+                int second = symbols.computeIfAbsent(merge.second, k -> symbols.size());
+                mergedSymbols[i] = symbols.computeIfAbsent(merge.first + merge.second, k -> symbols.size());
+                pairRanks.put(first, second, i); // a repeated pair keeps its last rank, as the map did
+            }
+            int maxChar = 0;
+            for (String symbol : symbols.keySet()) {
+                if (symbol.length() == 1) {
+                    maxChar = Math.max(maxChar, symbol.charAt(0));
+                }
+            }
+            this.charSymbols = new int[maxChar + 1];
+            Arrays.fill(charSymbols, -1);
+            for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+                if (symbol.getKey().length() == 1) {
+                    charSymbols[symbol.getKey().charAt(0)] = symbol.getValue();
+                }
             }
             // define regex pattern for splitting text into tokens
             this.pattern = Pattern.compile("'s|'t|'re|'ve|'m|'ll|'d| ?\\p{L}+| ?\\p{N}+| ?[^\\s\\p{L}\\p{N}]+|\\s+(?!\\S)|\\s+");
         }
 
+        // Hit, miss and eviction counters of the bpe() cache
+        public BpeCache getCache() {
+            return cache;
+        }
+
+        // Applies the merges to one pre-token (already mapped to byte characters) and returns its
+        // symbols separated by spaces. Symbols form a linked list over the characters, and a heap
+        // holds every adjacent pair that has a rank, keyed by (rank, position). The lowest-ranked
+        // pair is merged at all of its occurrences left to right, exactly like the string version,
+        // and only the pairs around each merge are re-ranked.
         public String bpe(String token) {
-            if (cache.containsKey(token)) return cache.get(token);
-            String[] word = token.split(""); 
-            Set<Pair<String, String>> pairs = getPairs(word);
+            int n = token.length();
+            if (n <= 1) return token;
+            String cached = cache.get(token);
+            if (cached != null) return cached;
 
-            if (pairs.isEmpty()) return token; 
+            int[] symbol = new int[n];
+            int[] next = new int[n]; // start of the following symbol, n at the end
+            int[] prev = new int[n]; // start of the preceding symbol, -1 at the start
+            for (int i = 0; i < n; i++) {
+                char c = token.charAt(i);
+                symbol[i] = c < charSymbols.length ? charSymbols[c] : -1;
+                next[i] = i + 1;
+                prev[i] = i - 1;
+            }
+            LongHeap heap = new LongHeap(n);
+            for (int i = 0; i + 1 < n; i++) {
+                pushPair(heap, symbol, i, i + 1);
+            }
 
-            while (true) {
-                // find the pair with the lowest rank
-                Pair<String, String> bigram = pairs.stream()
-                        .min(Comparator.comparingInt(p -> bpeRanks.getOrDefault(p, Integer.MAX_VALUE)))
-                        .orElse(null);
-
-                if (bigram == null || !bpeRanks.containsKey(bigram)) break; 
-
-                String first = bigram.first, second = bigram.second;
-                List<String> newWord = new ArrayList<>();
-                for (int i = 0; i < word.length; ) {
-                    // find the first occurrence of the pair
-                    int j = indexOf(word, first, i);
-                    if (j == -1) {
-                        newWord.addAll(Arrays.asList(word).subList(i, word.length));
-                        break;
-                    }
-                    newWord.addAll(Arrays.asList(word).subList(i, j)); 
-                    if (j < word.length - 1 && word[j].equals(first) && word[j + 1].equals(second)) {
-                        newWord.add(first + second); 
-                        i = j + 2;
+            while (!heap.isEmpty()) {
+                long entry = heap.pop();
+                int rank = (int) (entry >>> 32);
+                int start = (int) entry;
+                // Entries go stale when a neighbour was merged since they were pushed
+                if (next[start] < 0 || next[start] >= n || pairRanks.get(symbol[start], symbol[next[start]]) != rank) {
+                    continue;
+                }
+                int first = symbol[start];
+                int second = symbol[next[start]];
+                int merged = mergedSymbols[rank];
+                // Merge every occurrence from here to the end, skipping overlaps
+                for (int i = start; i < n && next[i] < n; ) {
+                    int j = next[i];
+                    if (symbol[i] == first && symbol[j] == second) {
+                        symbol[i] = merged;
+                        next[i] = next[j];
+                        if (next[j] < n) {
+                            prev[next[j]] = i;
+                        }
+                        next[j] = -1; // j no longer starts a symbol
+                        if (prev[i] >= 0) {
+                            pushPair(heap, symbol, prev[i], i);
+                        }
+                        if (next[i] < n) {
+                            pushPair(heap, symbol, i, next[i]);
+                        }
+                        i = next[i];
                     } else {
-                        newWord.add(word[j]); 
-                        i = j + 1;
+                        i = j;
                     }
                 }
-                word = newWord.toArray(new String[0]); 
-                pairs = getPairs(word); 
             }
 
-            String result = String.join(" ", word); 
-            cache.put(token, result); 
-            return result;
+            StringBuilder result = new StringBuilder(n + n / 2);
+            for (int i = 0; i < n; i = next[i]) {
+                if (i > 0) result.append(' ');
+                result.append(token, i, next[i]);
+            }
+            String word = result.toString();
+            cache.put(token, word);
+            return word;
+        }
+
+        private void pushPair(LongHeap heap, int[] symbol, int left, int right) {
+            int rank = pairRanks.get(symbol[left], symbol[right]);
+            if (rank >= 0) {
+                heap.push((long) rank << 32 | left);
+            }
         }
 
         // Encode text into BPE tokens
         public List<Integer> encode(String text) {
             List<Integer> bpeTokens = new ArrayList<>();
+            encode(text, bpeTokens::add);
+            return bpeTokens;
+        }
+
+        // Same, handing each token id to sink instead of boxing them into a list
+        public void encode(CharSequence text, IntConsumer sink) {
             Matcher matcher = pattern.matcher(text);
+            StringBuilder mapped = new StringBuilder();
             while (matcher.find()) {
-                String token = matcher.group();
-                // convert token to bytes and apply BPE
-                token = token.chars()
-                        .mapToObj(c -> byteEncoder.get(c))
-                        .collect(Collectors.joining());
-                String[] splitBpeTokens = bpe(token).split(" "); 
-                for (String bpeToken : splitBpeTokens) {
-                    bpeTokens.add(encoder.get(bpeToken)); 
+                // convert the token's UTF-8 bytes to their printable stand-ins and apply BPE
+                mapped.setLength(0);
+                for (byte b : matcher.group().getBytes(StandardCharsets.UTF_8)) {
+                    mapped.append(byteSymbols[b & 0xFF]);
+                }
+                String bpeTokens = bpe(mapped.toString());
+                for (int start = 0; start < bpeTokens.length(); ) {
+                    int end = bpeTokens.indexOf(' ', start);
+                    if (end < 0) {
+                        end = bpeTokens.length();
+                    }
+                    Integer id = encoder.get(bpeTokens.substring(start, end));
+                    if (id == null) {
+                        throw new IllegalArgumentException("Symbol '" + bpeTokens.substring(start, end) + "' is not in the vocabulary.");
+                    }
+                    sink.accept(id);
+                    start = end + 1;
                 }
             }
-            return bpeTokens; 
         }
 
         public String decode(List<Integer> tokens) {
-
-            StringBuilder bpeTokensBuilder = new StringBuilder();
+            byte[] bytes = new byte[tokens.size() * 4];
+            int length = 0;
             for (Integer token : tokens) {
-                String bpeToken = decoder.get(token);
-                if (bpeToken == null) {
+                byte[] piece = tokenBytes(token);
+                if (piece == null) {
                     System.err.println("Warning: Token ID " + token + " not found in decoder.");
                     continue;
                 }
-                bpeTokensBuilder.append(bpeToken);
+                if (length + piece.length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + piece.length));
+                }
+                System.arraycopy(piece, 0, bytes, length, piece.length);
+                length += piece.length;
             }
- 
-            String bpeText = bpeTokensBuilder.toString();
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
 
+        // Raw bytes of one token (shared, do not modify), or null for an unknown id
+        public byte[] tokenBytes(int token) {
+            return token >= 0 && token < tokenBytes.length ? tokenBytes[token] : null;
+        }
 
-            List<Byte> byteList = new ArrayList<>();
-            for (int i = 0; i < bpeText.length(); i++) {
-                String s = String.valueOf(bpeText.charAt(i));
-                Integer byteValue = byteDecoder.get(s);
-                if (byteValue == null) {
-                    System.err.println("Warning: Character '" + s + "' not found in byteDecoder.");
-                    continue;
+        public StreamDecoder newStreamDecoder() {
+            return new StreamDecoder();
+        }
+
+        // Turns tokens into text one at a time. A character whose UTF-8 bytes are split across
+        // tokens is held back until its last byte arrives, so every piece returned is complete
+        // text and each token costs time proportional to its own length only.
+        public class StreamDecoder {
+            private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            private ByteBuffer pending = ByteBuffer.allocate(64);
+            private CharBuffer chars = CharBuffer.allocate(64);
+
+            // Text completed by this token, empty while a character is still incomplete
+            public String accept(int token) {
+                byte[] piece = tokenBytes(token);
+                if (piece == null) {
+                    System.err.println("Warning: Token ID " + token + " not found in decoder.");
+                    return "";
+                }
+                if (pending.remaining() < piece.length) {
+                    pending.flip();
+                    pending = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.remaining() + piece.length)).put(pending);
                 }
-                byteList.add(byteValue.byteValue());
+                pending.put(piece);
+                return drain(false);
             }
 
-            byte[] byteArray = new byte[byteList.size()];
-            for (int i = 0; i < byteList.size(); i++) {
-                byteArray[i] = byteList.get(i);
+            // Ends the stream: bytes of an unfinished character come out as U+FFFD
+            public String flush() {
+                String rest = drain(true);
+                utf8.reset();
+                return rest;
             }
-            String text = new String(byteArray, StandardCharsets.UTF_8);
 
-            return text;
-        }
-    }
-    private static int indexOf(String[] array, String element, int startIndex) {
-        for (int i = startIndex; i < array.length; i++) {
-            if (array[i].equals(element)) {
-                return i;
+            private String drain(boolean endOfInput) {
+                pending.flip();
+                if (chars.capacity() < pending.remaining()) {
+                    chars = CharBuffer.allocate(pending.remaining());
+                }
+                utf8.decode(pending, chars, endOfInput);
+                if (endOfInput) {
+                    utf8.flush(chars);
+                }
+                pending.compact();
+                chars.flip();
+                String text = chars.toString();
+                chars.clear();
+                return text;
             }
         }
-        return -1;
-    }    
+    }
 
     // utility method to load an encoder from files
     public static Encoder getEncoder(String modelName, String modelsDir) throws IOException {
+        return getEncoder(modelName, modelsDir, BpeCache.DEFAULT_CAPACITY);
+    }
+
+    // Same, keeping at most cacheCapacity bpe() results in the encoder's cache
+    public static Encoder getEncoder(String modelName, String modelsDir, int cacheCapacity) throws IOException {
         // read the encoder.json file
         BufferedReader encoderReader = new BufferedReader(new FileReader(modelsDir + "/" + modelName + "/encoder.json"));
         Map<String, Integer> encoder = new HashMap<>(new Gson().fromJson(encoderReader, new TypeToken<Map<String, Integer>>() {}.getType()));
@@ -194,7 +339,107 @@ public class BytePairEncoding {
                 .collect(Collectors.toList());
         vocabReader.close();
 
-        return new Encoder(encoder, bpeMerges, "replace"); 
+        return new Encoder(encoder, bpeMerges, "replace", cacheCapacity);
+    }
+
+    // Open-addressing map from a packed (first, second) symbol pair to its merge rank
+    static final class PairRanks {
+        private final long[] keys;
+        private final int[] ranks;
+        private final int mask;
+
+        PairRanks(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.ranks = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(ranks, -1);
+        }
+
+        void put(int first, int second, int rank) {
+            long key = pack(first, second);
+            int slot = slot(key);
+            while (ranks[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            ranks[slot] = rank;
+        }
+
+        // Rank of the pair, -1 if it is not a merge (or either symbol is unknown)
+        int get(int first, int second) {
+            if (first < 0 || second < 0) {
+                return -1;
+            }
+            long key = pack(first, second);
+            for (int slot = slot(key); ranks[slot] >= 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return ranks[slot];
+                }
+            }
+            return -1;
+        }
+
+        private static long pack(int first, int second) {
+            return (long) first << 32 | (second & 0xFFFFFFFFL);
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+
+    // Binary min-heap of longs
+    static final class LongHeap {
+        private long[] heap;
+        private int size;
+
+        LongHeap(int capacity) {
+            this.heap = new long[Math.max(4, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
     }
 
     public static class Pair<F, S> {
@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Fused causal scaled-dot-product attention with a streaming (flash-style) softmax.
+// For each query row and head, keys are visited in BLOCK-sized chunks up to the query's
+// own position only: the chunk's scores go into a small scratch array, the running max
+// and denominator are rescaled once per chunk, and softmax(scores) * V is accumulated
+// directly, so neither the (seq x total) score matrix nor a causal mask ever exists.
+// Heads and chunks of query rows are independent, so they run as separate tasks on an
+// executor (the common fork/join pool by default).
+public final class CausalAttention {
+    static final int BLOCK = 64;       // keys scored per chunk
+    static final int ROW_CHUNK = 64;   // query rows per task, so long prompts split within a head too
+    // Below this many multiply-adds the task overhead outweighs the work
+    static final long PARALLEL_THRESHOLD = 1L << 16;
+    // Score and accumulator scratch, one set per thread, so steady-state steps allocate none
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private CausalAttention() {
+    }
+
+    // q: (seq, numHeads * headDim) for positions pastLength.., k and v: (total, numHeads * headDim)
+    // covering every position up to the last query, out: (seq, numHeads * headDim).
+    // All need unit column stride; out must not overlap the inputs.
+    // Attention weights are zeroed with probability dropoutRate and the rest scaled by
+    // 1 / (1 - dropoutRate) (inverted dropout, as Matrix.dropout does); 0 skips dropout entirely.
+    public static Matrix forward(Matrix q, Matrix k, Matrix v, Matrix out, int numHeads, int pastLength, double dropoutRate) {
+        return forward(q, k, v, out, numHeads, pastLength, dropoutRate, ForkJoinPool.commonPool());
+    }
+
+    // Same, running the (head, row chunk) tasks on executor
+    public static Matrix forward(Matrix q, Matrix k, Matrix v, Matrix out, int numHeads, int pastLength, double dropoutRate,
+                                 ExecutorService executor) {
+        forward(new Matrix[] { q }, new Matrix[] { k }, new Matrix[] { v }, new Matrix[] { out },
+                numHeads, new int[] { pastLength }, dropoutRate, executor);
+        return out;
+    }
+
+    // Several independent sequences (e.g. a ragged batch) at once: sequence s has queries q[s]
+    // for positions pastLengths[s].., keys k[s] and values v[s], and writes out[s].
+    // Tasks of all sequences share one submission, so many short decode steps still fill the pool.
+    public static void forward(Matrix[] q, Matrix[] k, Matrix[] v, Matrix[] out, int numHeads, int[] pastLengths,
+                               double dropoutRate, ExecutorService executor) {
+        Batch batch = new Batch().reset(numHeads, dropoutRate);
+        for (int s = 0; s < q.length; s++) {
+            batch.add(q[s], k[s], v[s], out[s], 0, q[s].getRows(), pastLengths[s]);
+        }
+        batch.run(executor);
+    }
+
+    // The (sequence, head, row chunk) slices of one attention call. A Workspace keeps one, so
+    // decode steps reuse it instead of building task objects for every layer.
+    static final class Batch implements ParallelSlices.Job {
+        // Per sequence
+        private Tensor[] queries = new Tensor[0];
+        private Tensor[] keys = new Tensor[0];
+        private Tensor[] values = new Tensor[0];
+        private Tensor[] outputs = new Tensor[0];
+        private int[] firstRows = new int[0];
+        private int[] endRows = new int[0];
+        private int[] pastLengths = new int[0];
+        private int sequences;
+        // Per slice
+        private int[] sliceSequences = new int[0];
+        private int[] sliceColumns = new int[0];
+        private int[] sliceRows = new int[0];
+        private int slices;
+        private int numHeads;
+        private int width;
+        private double dropoutRate;
+        private long work;
+
+        Batch reset(int numHeads, double dropoutRate) {
+            if (!(dropoutRate >= 0.0 && dropoutRate < 1.0)) {
+                throw new IllegalArgumentException("Dropout rate must be in [0, 1).");
+            }
+            this.numHeads = numHeads;
+            this.dropoutRate = dropoutRate;
+            width = -1;
+            sequences = 0;
+            slices = 0;
+            work = 0;
+            return this;
+        }
+
+        // Adds rows [rowStart, rowEnd) of q as one sequence continuing after pastLength cached
+        // positions: k and v hold its keys and values from position 0, out the same rows as q.
+        Batch add(Matrix q, Matrix k, Matrix v, Matrix out, int rowStart, int rowEnd, int pastLength) {
+            int seqLength = rowEnd - rowStart;
+            int cols = q.getCols();
+            if (cols % numHeads != 0 || k.getCols() != cols || v.getCols() != cols || (width != -1 && cols != width)
+                    || rowStart < 0 || rowEnd > q.getRows() || rowEnd > out.getRows() || out.getCols() != cols) {
+                throw new IllegalArgumentException("Attention inputs have incompatible shapes.");
+            }
+            if (k.getRows() < pastLength + seqLength || v.getRows() < pastLength + seqLength) {
+                throw new IllegalArgumentException("Keys and values must cover every query position.");
+            }
+            Tensor qt = q.tensor();
+            Tensor kt = k.to(q.precision()).tensor();
+            Tensor vt = v.to(q.precision()).tensor();
+            Tensor ot = out.tensor();
+            if (qt.stride(1) != 1 || kt.stride(1) != 1 || vt.stride(1) != 1 || ot.stride(1) != 1
+                    || out.precision() != q.precision() || (sequences > 0 && qt.precision() != queries[0].precision())) {
+                throw new IllegalArgumentException("Attention requires unit column stride and one precision.");
+            }
+            width = cols;
+            if (sequences == queries.length) {
+                int grown = Math.max(1, 2 * sequences);
+                queries = Arrays.copyOf(queries, grown);
+                keys = Arrays.copyOf(keys, grown);
+                values = Arrays.copyOf(values, grown);
+                outputs = Arrays.copyOf(outputs, grown);
+                firstRows = Arrays.copyOf(firstRows, grown);
+                endRows = Arrays.copyOf(endRows, grown);
+                pastLengths = Arrays.copyOf(pastLengths, grown);
+            }
+            queries[sequences] = qt;
+            keys[sequences] = kt;
+            values[sequences] = vt;
+            outputs[sequences] = ot;
+            firstRows[sequences] = rowStart;
+            endRows[sequences] = rowEnd;
+            pastLengths[sequences] = pastLength;
+            int headDim = cols / numHeads;
+            int needed = slices + numHeads * ((seqLength + ROW_CHUNK - 1) / ROW_CHUNK);
+            if (needed > sliceSequences.length) {
+                int grown = Math.max(needed, 2 * sliceSequences.length);
+                sliceSequences = Arrays.copyOf(sliceSequences, grown);
+                sliceColumns = Arrays.copyOf(sliceColumns, grown);
+                sliceRows = Arrays.copyOf(sliceRows, grown);
+            }
+            for (int h = 0; h < numHeads; h++) {
+                for (int r0 = 0; r0 < seqLength; r0 += ROW_CHUNK) {
+                    sliceSequences[slices] = sequences;
+                    sliceColumns[slices] = h * headDim;
+                    sliceRows[slices] = r0;
+                    slices++;
+                }
+            }
+            sequences++;
+            // Causal work is about seq * (past + seq / 2) scores of width multiply-adds, twice
+            work += (long) seqLength * (pastLength + (seqLength + 1) / 2) * cols * 2;
+            return this;
+        }
+
+        // Runs every slice, on executor when the work is worth it. A ForkJoinPool runs the
+        // reusable slices directly; other executors get one Callable per slice.
+        void run(ExecutorService executor) {
+            boolean serial = work < PARALLEL_THRESHOLD || slices <= 1
+                || (executor instanceof ForkJoinPool && ((ForkJoinPool) executor).getParallelism() <= 1);
+            try {
+                if (serial) {
+                    for (int i = 0; i < slices; i++) {
+                        slice(i);
+                    }
+                } else if (executor instanceof ForkJoinPool) {
+                    ParallelSlices.run((ForkJoinPool) executor, this, slices);
+                } else {
+                    List<Callable<Void>> tasks = new ArrayList<>(slices);
+                    for (int i = 0; i < slices; i++) {
+                        int index = i;
+                        tasks.add(() -> {
+                            slice(index);
+                            return null;
+                        });
+                    }
+                    for (Future<Void> future : executor.invokeAll(tasks)) {
+                        future.get();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while computing attention.", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Attention task failed.", e.getCause());
+            } finally {
+                // Do not keep caches of finished sequences reachable from a long-lived workspace
+                Arrays.fill(keys, 0, sequences, null);
+                Arrays.fill(values, 0, sequences, null);
+            }
+        }
+
+        @Override
+        public void slice(int index) {
+            int s = sliceSequences[index];
+            int headDim = width / numHeads;
+            int first = firstRows[s];
+            int rowStart = first + sliceRows[index];
+            int rowEnd = Math.min(rowStart + ROW_CHUNK, endRows[s]);
+            // Rows are indexed within the whole batch, so shift the past length by the sequence's
+            // first row: batch row first + i still sees keys 0..pastLength + i
+            int past = pastLengths[s] - first;
+            if (queries[s].precision() == Precision.FLOAT32) {
+                headFloat(queries[s], keys[s], values[s], outputs[s], sliceColumns[index], headDim, rowStart, rowEnd, past,
+                          dropoutRate);
+            } else {
+                headDouble(queries[s], keys[s], values[s], outputs[s], sliceColumns[index], headDim, rowStart, rowEnd, past,
+                           dropoutRate);
+            }
+        }
+    }
+
+    // One head, query rows [rowStart, rowEnd): columns [col, col + headDim)
+    static void headDouble(Tensor q, Tensor k, Tensor v, Tensor out, int col, int headDim, int rowStart, int rowEnd,
+                           int pastLength, double dropoutRate) {
+        double[] qData = q.data();
+        double[] kData = k.data();
+        double[] vData = v.data();
+        double[] oData = out.data();
+        double scale = 1.0 / Math.sqrt(headDim);
+        Scratch scratch = SCRATCH.get();
+        double[] scores = scratch.scores;
+        double[] acc = scratch.acc(headDim);
+        ThreadLocalRandom random = dropoutRate > 0.0 ? ThreadLocalRandom.current() : null;
+        double keepScale = 1.0 / (1.0 - dropoutRate);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int qRow = q.offset() + i * q.stride(0) + col;
+            int last = pastLength + i; // causal: keys 0..last
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0.0;
+            Arrays.fill(acc, 0, headDim, 0.0);
+            for (int j0 = 0; j0 <= last; j0 += BLOCK) {
+                int n = Math.min(BLOCK, last + 1 - j0);
+                double blockMax = Double.NEGATIVE_INFINITY;
+                for (int jj = 0; jj < n; jj++) {
+                    int kRow = k.offset() + (j0 + jj) * k.stride(0) + col;
+                    scores[jj] = Kernels.ACTIVE.dot(qData, qRow, kData, kRow, headDim) * scale;
+                    blockMax = Math.max(blockMax, scores[jj]);
+                }
+                if (blockMax > max) {
+                    // Rescale what has been accumulated so far to the new maximum
+                    double correction = Math.exp(max - blockMax);
+                    sum *= correction;
+                    for (int d = 0; d < headDim; d++) {
+                        acc[d] *= correction;
+                    }
+                    max = blockMax;
+                }
+                for (int jj = 0; jj < n; jj++) {
+                    double p = Math.exp(scores[jj] - max);
+                    sum += p; // the softmax denominator counts dropped weights too
+                    int vRow = v.offset() + (j0 + jj) * v.stride(0) + col;
+                    if (random == null) {
+                        Kernels.ACTIVE.axpy(p, vData, vRow, acc, 0, headDim);
+                    } else if (random.nextDouble() >= dropoutRate) {
+                        Kernels.ACTIVE.axpy(p * keepScale, vData, vRow, acc, 0, headDim);
+                    }
+                }
+            }
+            int oRow = out.offset() + i * out.stride(0) + col;
+            double inv = 1.0 / sum;
+            for (int d = 0; d < headDim; d++) {
+                oData[oRow + d] = acc[d] * inv;
+            }
+        }
+    }
+
+    static void headFloat(Tensor q, Tensor k, Tensor v, Tensor out, int col, int headDim, int rowStart, int rowEnd,
+                          int pastLength, double dropoutRate) {
+        float[] qData = q.floatData();
+        float[] kData = k.floatData();
+        float[] vData = v.floatData();
+        float[] oData = out.floatData();
+        float scale = (float) (1.0 / Math.sqrt(headDim));
+        Scratch scratch = SCRATCH.get();
+        float[] scores = scratch.floatScores;
+        float[] acc = scratch.floatAcc(headDim);
+        ThreadLocalRandom random = dropoutRate > 0.0 ? ThreadLocalRandom.current() : null;
+        float keepScale = (float) (1.0 / (1.0 - dropoutRate));
+        for (int i = rowStart; i < rowEnd; i++) {
+            int qRow = q.offset() + i * q.stride(0) + col;
+            int last = pastLength + i;
+            float max = Float.NEGATIVE_INFINITY;
+            float sum = 0.0f;
+            Arrays.fill(acc, 0, headDim, 0.0f);
+            for (int j0 = 0; j0 <= last; j0 += BLOCK) {
+                int n = Math.min(BLOCK, last + 1 - j0);
+                float blockMax = Float.NEGATIVE_INFINITY;
+                for (int jj = 0; jj < n; jj++) {
+                    int kRow = k.offset() + (j0 + jj) * k.stride(0) + col;
+                    scores[jj] = Kernels.ACTIVE.dot(qData, qRow, kData, kRow, headDim) * scale;
+                    blockMax = Math.max(blockMax, scores[jj]);
+                }
+                if (blockMax > max) {
+                    float correction = (float) Math.exp(max - blockMax);
+                    sum *= correction;
+                    for (int d = 0; d < headDim; d++) {
+                        acc[d] *= correction;
+                    }
+                    max = blockMax;
+                }
+                for (int jj = 0; jj < n; jj++) {
+                    float p = (float) Math.exp(scores[jj] - max);
+                    sum += p;
+                    int vRow = v.offset() + (j0 + jj) * v.stride(0) + col;
+                    if (random == null) {
+                        Kernels.ACTIVE.axpy(p, vData, vRow, acc, 0, headDim);
+                    } else if (random.nextDouble() >= dropoutRate) {
+                        Kernels.ACTIVE.axpy(p * keepScale, vData, vRow, acc, 0, headDim);
+                    }
+                }
+            }
+            int oRow = out.offset() + i * out.stride(0) + col;
+            float inv = 1.0f / sum;
+            for (int d = 0; d < headDim; d++) {
+                oData[oRow + d] = acc[d] * inv;
+            }
+        }
+    }
+
+    private static final class Scratch {
+        final double[] scores = new double[BLOCK];
+        final float[] floatScores = new float[BLOCK];
+        private double[] acc = new double[0];
+        private float[] floatAcc = new float[0];
+
+        double[] acc(int headDim) {
+            if (acc.length < headDim) {
+                acc = new double[headDim];
+            }
+            return acc;
+        }
+
+        float[] floatAcc(int headDim) {
+            if (floatAcc.length < headDim) {
+                floatAcc = new float[headDim];
+            }
+            return floatAcc;
+        }
+    }
+}
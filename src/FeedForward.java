@@ -3,14 +3,31 @@ public class FeedForward {
     public final Linear fc2; 
 
     public FeedForward(int embDim) {
-        this.fc1 = new Linear(embDim, 4 * embDim);
-        this.fc2 = new Linear(4 * embDim, embDim);
+        this(embDim, Precision.FLOAT64);
+    }
+
+    public FeedForward(int embDim, Precision precision) {
+        this.fc1 = new Linear(embDim, 4 * embDim, precision);
+        this.fc2 = new Linear(4 * embDim, embDim, precision);
+        fc1.setProfilerOp(Profiler.Op.MLP_UP);
+        fc2.setProfilerOp(Profiler.Op.MLP_DOWN);
+    }
+
+    public void quantize(int groupSize) {
+        fc1.quantize(groupSize);
+        fc2.quantize(groupSize);
     }
 
     public Matrix forward(Matrix x) {
-        Matrix out = fc1.forward(x);     
-        out = GELU.forward(out);        
-        out = fc2.forward(out);      
-        return out;
+        Matrix hidden = fc1.forward(x);
+        GELU.forward(hidden, hidden); // in place
+        return fc2.forward(hidden);
+    }
+
+    // Same, using hidden (rows, 4 * embDim) as scratch and writing the result into out
+    public Matrix forward(Matrix x, Matrix hidden, Matrix out) {
+        fc1.forward(x, hidden);
+        GELU.forward(hidden, hidden);
+        return fc2.forward(hidden, out);
     }
 }
@@ -1,73 +1,243 @@
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 public class GPTModel {
     private final int vocabSize;
     private final int embDim;
     private final int contextLength;
     private final int numLayers;
+    private final Precision precision;
     private final TransformerBlock[] transformerBlocks;
-    private final Matrix tokenEmbedding;
+    private Matrix tokenEmbedding;                   // null once quantized
+    private QuantizedMatrix quantizedTokenEmbedding; // null unless quantized
     private final Matrix positionEmbedding;
     private final LayerNorm finalLayerNorm;
-    private final Linear outputProjection;
+    private OutputHead outputHead;
 
     public GPTModel(int vocabSize, int embDim, int contextLength, int numLayers, int numHeads, double dropoutRate) {
+        this(vocabSize, embDim, contextLength, numLayers, numHeads, dropoutRate, Precision.FLOAT64);
+    }
+
+    // precision selects double (reference) or float storage for all weights and activations
+    public GPTModel(int vocabSize, int embDim, int contextLength, int numLayers, int numHeads, double dropoutRate, Precision precision) {
         this.vocabSize = vocabSize;
         this.embDim = embDim;
         this.contextLength = contextLength;
         this.numLayers = numLayers;
+        this.precision = precision;
 
         // Initialize token embeddings: Shape (vocabSize, embDim)
-        this.tokenEmbedding = Matrix.random(vocabSize, embDim, 0.0, 0.02);
+        this.tokenEmbedding = Matrix.random(vocabSize, embDim, 0.0, 0.02, precision);
 
         // Initialize positional embeddings: Shape (contextLength, embDim)
-        this.positionEmbedding = Matrix.random(contextLength, embDim, 0.0, 0.02);
+        this.positionEmbedding = Matrix.random(contextLength, embDim, 0.0, 0.02, precision);
 
         // Initialize Transformer blocks
         this.transformerBlocks = new TransformerBlock[numLayers];
         for (int i = 0; i < numLayers; i++) {
-            this.transformerBlocks[i] = new TransformerBlock(embDim, numHeads, contextLength, dropoutRate);
+            this.transformerBlocks[i] = new TransformerBlock(embDim, numHeads, contextLength, dropoutRate, precision);
         }
 
         // Initialize final LayerNorm
-        this.finalLayerNorm = new LayerNorm(embDim);
+        this.finalLayerNorm = new LayerNorm(embDim, precision);
 
-        // Initialize output projection layer
-        this.outputProjection = new Linear(embDim, vocabSize);
+        // Output projection: logits are scored against the tied token embedding
+        this.outputHead = new OutputHead(tokenEmbedding);
     }
     
 
     public Matrix forward(int[] tokenIndices) {
-        // Input: tokenIndices of shape (seqLength)
-        int seqLength = tokenIndices.length;
+        // Input: tokenIndices of shape (seqLength); output: logits of shape (seqLength, vocabSize)
+        return forward(new int[][] { tokenIndices })[0];
+    }
 
-        // Check if seqLength exceeds contextLength
-        if (seqLength > contextLength) {
-            throw new IllegalArgumentException("Sequence length exceeds model's context length.");
+    // Ragged batch: runs several independent sequences of different lengths in one pass.
+    // Their rows are packed into one matrix so every weight is read once per layer for the
+    // whole batch; attention and positions stay per sequence. Returns each sequence's
+    // logits, shape (length, vocabSize), same as forward(int[]) on it alone.
+    public Matrix[] forward(int[][] sequences) {
+        int[] starts = packOffsets(sequences, null);
+        Profiler.Span span = Profiler.start(Profiler.Op.FORWARD);
+        Workspace workspace = new Workspace(embDim, vocabSize, precision).setRows(starts[sequences.length]);
+        Matrix x = finalLayerNorm.forward(hiddenStates(sequences, starts, null, workspace), workspace.normed());
+        Matrix logits = outputHead.forward(x); // Shape: (totalLength, vocabSize)
+        Profiler.end(span);
+        Matrix[] result = new Matrix[sequences.length];
+        for (int s = 0; s < sequences.length; s++) {
+            result[s] = logits.getSubMatrix(starts[s], starts[s + 1], 0, vocabSize);
+        }
+        return result;
+    }
+
+    // Batched decoding step: appends tokenIndices[s] to sessions[s] for every session at once
+    // (a prompt, or a single next token). Returns the logits for each session's last new
+    // position, shape (1, vocabSize). Sessions must be distinct and belong to this model.
+    // Activations live in the first session's workspace, and the returned logits are views of
+    // it: they stay valid until that session takes part in another forward pass.
+    public Matrix[] forward(Session[] sessions, int[][] tokenIndices) {
+        if (sessions.length != tokenIndices.length) {
+            throw new IllegalArgumentException("Expected one token array per session.");
+        }
+        KVCache[] caches = new KVCache[sessions.length];
+        for (int s = 0; s < sessions.length; s++) {
+            boolean duplicate = false;
+            for (int t = 0; t < s; t++) {
+                duplicate |= sessions[t] == sessions[s];
+            }
+            if (sessions[s].model() != this || duplicate) {
+                throw new IllegalArgumentException("Sessions must be distinct sessions of this model.");
+            }
+            caches[s] = sessions[s].cache;
+        }
+        int[] starts = packOffsets(tokenIndices, caches);
+        Profiler.Span span = Profiler.start(Profiler.Op.FORWARD);
+        Workspace workspace = sessions[0].workspace.setRows(starts[sessions.length]).setLogitRows(sessions.length);
+        Matrix x = hiddenStates(tokenIndices, starts, caches, workspace);
+        for (int s = 0; s < caches.length; s++) {
+            caches[s].advance(tokenIndices[s].length);
         }
 
-        // Get token embeddings
-        Matrix tokenEmbeddings = getTokenEmbeddings(tokenIndices); // Shape: (seqLength, embDim)
+        Matrix last = workspace.last(); // Shape: (sessions, embDim)
+        for (int s = 0; s < sessions.length; s++) {
+            last.getSubMatrix(s, s + 1, 0, embDim).copyFrom(x.getSubMatrix(starts[s + 1] - 1, starts[s + 1], 0, embDim));
+        }
+        Matrix logits = outputHead.forward(finalLayerNorm.forward(last, last), workspace.logits()); // Shape: (sessions, vocabSize)
+        Profiler.end(span);
+        Matrix[] result = new Matrix[sessions.length];
+        for (int s = 0; s < sessions.length; s++) {
+            result[s] = sessions.length == 1 ? logits : logits.getSubMatrix(s, s + 1, 0, vocabSize);
+        }
+        return result;
+    }
 
-        // Get positional embeddings
-        Matrix positionalEmbeddings = getPositionalEmbeddings(seqLength); // Shape: (seqLength, embDim)
+    // Row offsets of each sequence in the packed batch, checking lengths against the context
+    private int[] packOffsets(int[][] sequences, KVCache[] caches) {
+        if (sequences.length == 0) {
+            throw new IllegalArgumentException("Batch must contain at least one sequence.");
+        }
+        int[] starts = new int[sequences.length + 1];
+        for (int s = 0; s < sequences.length; s++) {
+            int pastLength = caches == null ? 0 : caches[s].getLength();
+            if (sequences[s].length == 0) {
+                throw new IllegalArgumentException("Sequences must not be empty.");
+            }
+            if (pastLength + sequences[s].length > contextLength) {
+                throw new IllegalArgumentException("Sequence length exceeds model's context length.");
+            }
+            starts[s + 1] = starts[s] + sequences[s].length;
+        }
+        return starts;
+    }
 
-        // Combine embeddings
-        Matrix x = tokenEmbeddings.add(positionalEmbeddings); // Shape: (seqLength, embDim)
+    // Embeds the packed sequences at their positions (after the cached ones, if any) into
+    // workspace.hidden() and runs every block over the batch there. Returns the hidden states
+    // before the final LayerNorm.
+    private Matrix hiddenStates(int[][] sequences, int[] starts, KVCache[] caches, Workspace workspace) {
+        Matrix x = workspace.hidden(); // Shape: (totalLength, embDim)
+        for (int s = 0; s < sequences.length; s++) {
+            int pastLength = caches == null ? 0 : caches[s].getLength();
+            Matrix rows = x.getSubMatrix(starts[s], starts[s + 1], 0, embDim);
+            getTokenEmbeddings(sequences[s], rows);
+            rows.addInPlace(getPositionalEmbeddings(pastLength, sequences[s].length));
+        }
+        for (int i = 0; i < numLayers; i++) {
+            x = transformerBlocks[i].forward(workspace, starts, caches, i);
+        }
+        return x;
+    }
+
+    // Int8 weight-only quantization of every Linear and of the tied token embedding.
+    // Call after loadWeights; groupSize of 0 means one scale per row. The full-precision weights are
+    // allocated at construction and only released here, so peak memory while loading is not reduced.
+    public void quantize(int groupSize) {
+        for (TransformerBlock block : transformerBlocks) {
+            block.quantize(groupSize);
+        }
+        if (quantizedTokenEmbedding == null) {
+            this.quantizedTokenEmbedding = QuantizedMatrix.quantize(tokenEmbedding, groupSize);
+            this.outputHead = new OutputHead(quantizedTokenEmbedding);
+            this.tokenEmbedding = null;
+        }
+    }
+
+    public boolean isQuantized() {
+        return quantizedTokenEmbedding != null;
+    }
+
+    // Switches every layer between training mode (dropout applied) and evaluation mode, the
+    // default, in which dropout is skipped entirely and forward passes are deterministic
+    public GPTModel setTraining(boolean training) {
+        for (TransformerBlock block : transformerBlocks) {
+            block.setTraining(training);
+        }
+        return this;
+    }
+
+    public boolean isTraining() {
+        return transformerBlocks.length > 0 && transformerBlocks[0].isTraining();
+    }
 
-        // Pass through Transformer blocks
+    // Runs the attention heads of every layer on executor instead of the common fork/join pool
+    public void setAttentionExecutor(ExecutorService executor) {
         for (TransformerBlock block : transformerBlocks) {
-            x = block.forward(x); // Shape: (seqLength, embDim)
+            block.attention.setExecutor(executor);
         }
+    }
 
-        // Apply final LayerNorm
-        x = finalLayerNorm.forward(x); // Shape: (seqLength, embDim)
+    public Precision getPrecision() {
+        return precision;
+    }
 
-        // Output projection to vocabulary size
-        Matrix logits = x.matMul(Matrix.transpose(tokenEmbedding)); // Shape: (seqLength, vocabSize)
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    public int getContextLength() {
+        return contextLength;
+    }
 
-        return logits;
+    public Session newSession() {
+        return new Session();
+    }
+
+    // Stateful decoding session: keeps per-layer keys/values so each step only runs the new tokens
+    public class Session {
+        private final KVCache cache = new KVCache(numLayers, contextLength, embDim, precision);
+        private final Workspace workspace = new Workspace(embDim, vocabSize, precision);
+
+        // Clears the cache and runs the whole prompt in one pass. Returns logits for the last prompt position, shape (1, vocabSize).
+        // Like next(), the logits are a view of the session's workspace, overwritten by the next call.
+        public Matrix prefill(int[] tokenIndices) {
+            cache.reset();
+            return forward(new Session[] { this }, new int[][] { tokenIndices })[0];
+        }
+
+        // Feeds one more token. Returns its logits, shape (1, vocabSize).
+        public Matrix next(int tokenIndex) {
+            return forward(new Session[] { this }, new int[][] { { tokenIndex } })[0];
+        }
+
+        // Number of tokens processed so far
+        public int getLength() {
+            return cache.getLength();
+        }
+
+        public void reset() {
+            cache.reset();
+        }
+
+        // Activation buffers of this session, grown to the largest batch it has run
+        public Workspace getWorkspace() {
+            return workspace;
+        }
+
+        private GPTModel model() {
+            return GPTModel.this;
+        }
     }
     public void loadWeights(Map<String, Object> weightsMap) {
+        if (isQuantized()) {
+            throw new IllegalStateException("Weights must be loaded before the model is quantized.");
+        }
         try {
             System.out.println("Loading token embedding weights...");
             int vocabSize = this.vocabSize;
@@ -162,37 +332,66 @@ public class GPTModel {
     }
     
     
-    public static double[][] transposeMatrix(double[][] matrix) {
-        int rows = matrix.length;
-        int cols = matrix[0].length;
-        double[][] transposed = new double[cols][rows];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                transposed[j][i] = matrix[i][j];
-            }
+    // Loads weights without boxed intermediates: the source copies each tensor directly into the layers
+    public void loadWeights(WeightSource source) throws java.io.IOException {
+        Map<String, Tensor> parameters = namedParameters();
+        source.readInto(parameters);
+        System.out.println("Model weights loaded successfully!");
+    }
+
+    // Views of every weight buffer keyed by its GPT-2 checkpoint name, in checkpoint shape
+    // (matrices as (in, out), biases and LayerNorm parameters as vectors)
+    public Map<String, Tensor> namedParameters() {
+        if (isQuantized()) {
+            throw new IllegalStateException("Weights must be loaded before the model is quantized.");
         }
-        return transposed;
+        Map<String, Tensor> parameters = new LinkedHashMap<>();
+        parameters.put("wte.weight", tokenEmbedding.tensor());
+        parameters.put("wpe.weight", positionEmbedding.tensor());
+        for (int i = 0; i < numLayers; i++) {
+            String prefix = "h." + i + ".";
+            TransformerBlock block = transformerBlocks[i];
+            putLayerNorm(parameters, prefix + "ln_1", block.norm1);
+            parameters.put(prefix + "attn.c_attn.weight", block.attention.getCattnWeight().tensor());
+            parameters.put(prefix + "attn.c_attn.bias", vector(block.attention.getCattnBias()));
+            putLinear(parameters, prefix + "attn.c_proj", block.attention.outProj);
+            putLayerNorm(parameters, prefix + "ln_2", block.norm2);
+            putLinear(parameters, prefix + "mlp.c_fc", block.feedForward.fc1);
+            putLinear(parameters, prefix + "mlp.c_proj", block.feedForward.fc2);
+        }
+        putLayerNorm(parameters, "ln_f", finalLayerNorm);
+        return parameters;
     }
-    
-    private Matrix getTokenEmbeddings(int[] tokenIndices) {
-        int seqLength = tokenIndices.length;
-        double[][] embeddings = new double[seqLength][embDim];
-        for (int i = 0; i < seqLength; i++) {
-            int tokenIndex = tokenIndices[i];
+
+    private static void putLinear(Map<String, Tensor> parameters, String name, Linear linear) {
+        parameters.put(name + ".weight", linear.getWeight().tensor());
+        parameters.put(name + ".bias", vector(linear.getBias()));
+    }
+
+    private static void putLayerNorm(Map<String, Tensor> parameters, String name, LayerNorm norm) {
+        parameters.put(name + ".weight", vector(norm.getScale()));
+        parameters.put(name + ".bias", vector(norm.getShift()));
+    }
+
+    private static Tensor vector(Matrix row) {
+        return row.tensor().view(row.getCols());
+    }
+
+    // Writes the embeddings of tokenIndices into out, shape (tokens, embDim)
+    private Matrix getTokenEmbeddings(int[] tokenIndices, Matrix out) {
+        for (int tokenIndex : tokenIndices) {
             if (tokenIndex < 0 || tokenIndex >= vocabSize) {
                 throw new IllegalArgumentException("Token index out of bounds.");
             }
-            embeddings[i] = tokenEmbedding.getRow(tokenIndex);
         }
-        return new Matrix(embeddings);
+        if (quantizedTokenEmbedding != null) {
+            return quantizedTokenEmbedding.gatherRows(tokenIndices, out);
+        }
+        return tokenEmbedding.gatherRows(tokenIndices, out);
     }
 
-    private Matrix getPositionalEmbeddings(int seqLength) {
-        // Return the first seqLength positional embeddings
-        double[][] embeddings = new double[seqLength][embDim];
-        for (int i = 0; i < seqLength; i++) {
-            embeddings[i] = positionEmbedding.getRow(i);
-        }
-        return new Matrix(embeddings);
+    private Matrix getPositionalEmbeddings(int start, int seqLength) {
+        // View of seqLength positional embeddings starting at position start
+        return positionEmbedding.getSubMatrix(start, start + seqLength, 0, embDim);
     }
 }
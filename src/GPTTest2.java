@@ -1,19 +1,14 @@
 import java.util.*;
 import java.io.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class GPTTest2 {
     public static void main(String[] args) {
         // Display the JVM's max heap size
         System.out.println("Max Heap Size: " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+        System.out.println("Kernels: " + Kernels.ACTIVE.name());
 
         try {
-            // Step 1: Load the weights map
-            System.out.println("Loading model weights...");
-            Map<String, Object> weightsMap = WeightsLoader.loadWeights("gpt2_weights.json");
-
-            // Step 2: Initialize your GPTModel
+            // Step 1: Initialize your GPTModel
             int vocabSize = 50257; // GPT-2 uses 50257 tokens
             int embDim = 768;      // For GPT-2 small
             int contextLength = 1024;
@@ -23,12 +18,12 @@ public class GPTTest2 {
 
             GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, dropoutRate);
 
-            // Step 3: Load weights into the model
+            // Step 2: Stream the weights into the model
             System.out.println("Loading weights into the model...");
-            model.loadWeights(weightsMap);
+            model.loadWeights(new JsonWeightsLoader("gpt2_weights.json"));
             System.out.println("Model weights loaded successfully!");
 
-            // Step 4: Initialize the BytePairEncoding tokenizer
+            // Step 3: Initialize the BytePairEncoding tokenizer
             System.out.println("Initializing BytePairEncoding tokenizer...");
             BytePairEncoding.Encoder encoder = BytePairEncoding.getEncoder("gpt2", "models");
 
@@ -82,27 +77,20 @@ public class GPTTest2 {
                     // Record start time
                     long startTime = System.nanoTime();
 
+                    // Run the prompt once, then feed back one token per step
+                    GPTModel.Session session = model.newSession();
+                    Sampler sampler = new Sampler(vocabSize, Objects.hash(prompt, K)).setTopK(K);
+                    Matrix logits = session.prefill(inputTokenIndices);
+
                     // Generate tokens
                     for (int i = 0; i < numTokensToGenerate; i++) {
-                        // Get the current input tokens
-                        int[] currentInput = concatenateArrays(inputTokenIndices, generatedTokenIndices);
-
-                        // Ensure the input does not exceed context length
-                        if (currentInput.length > contextLength) {
-                            throw new IllegalArgumentException("Input exceeds the model's context length.");
+                        // Run the model on the previously sampled token only
+                        if (i > 0) {
+                            logits = session.next(generatedTokenIndices.get(i - 1));
                         }
 
-                        // Run the model
-                        Matrix logits = model.forward(currentInput);
-
-                        // Get the logits for the last token
-                        double[] lastLogits = logits.getRow(logits.getRows() - 1);
-
-                        // Convert logits to probabilities using softmax
-                        double[] probabilities = softmax(lastLogits);
-
-                        // Sample the next token from the top K probabilities
-                        int nextToken = sampleFromTopN(probabilities, K);
+                        // Sample the next token from the top K probabilities of the last position
+                        int nextToken = sampler.sample(logits);
 
                         // Add the generated token to the list
                         generatedTokenIndices.add(nextToken);
@@ -148,58 +136,4 @@ public class GPTTest2 {
             e.printStackTrace();
         }
     }
-
-    // Helper method to concatenate two arrays
-    private static int[] concatenateArrays(int[] array1, List<Integer> list2) {
-        int[] array2 = list2.stream().mapToInt(Integer::intValue).toArray();
-        int[] result = new int[array1.length + array2.length];
-        System.arraycopy(array1, 0, result, 0, array1.length);
-        System.arraycopy(array2, 0, result, array1.length, array2.length);
-        return result;
-    }
-
-    // Helper method to compute softmax
-    private static double[] softmax(double[] logits) {
-        double maxLogit = Arrays.stream(logits).max().orElse(0.0);
-        double sumExp = 0.0;
-        double[] expLogits = new double[logits.length];
-        for (int i = 0; i < logits.length; i++) {
-            expLogits[i] = Math.exp(logits[i] - maxLogit);
-            sumExp += expLogits[i];
-        }
-        for (int i = 0; i < logits.length; i++) {
-            expLogits[i] /= sumExp;
-        }
-        return expLogits;
-    }
-
-    // Helper function to sample from the top N probabilities
-    private static int sampleFromTopN(double[] probabilities, int topN) {
-        // Create a list of indices and their associated probabilities
-        List<Integer> indices = IntStream.range(0, probabilities.length).boxed().collect(Collectors.toList());
-        indices.sort((i, j) -> Double.compare(probabilities[j], probabilities[i])); // Sort descending by probability
-
-        // Retain only the top N indices
-        List<Integer> topIndices = indices.subList(0, Math.min(topN, indices.size()));
-        double[] topProbabilities = topIndices.stream().mapToDouble(i -> probabilities[i]).toArray();
-
-        // Normalize the top probabilities
-        double sum = Arrays.stream(topProbabilities).sum();
-        for (int i = 0; i < topProbabilities.length; i++) {
-            topProbabilities[i] /= sum;
-        }
-
-        // Sample from the top N indices using the normalized probabilities
-        double r = Math.random();
-        double cumulative = 0.0;
-        for (int i = 0; i < topIndices.size(); i++) {
-            cumulative += topProbabilities[i];
-            if (r < cumulative) {
-                return topIndices.get(i);
-            }
-        }
-
-        // Fallback (should not reach here)
-        return topIndices.get(topIndices.size() - 1);
-    }
 }
@@ -0,0 +1,177 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Cache-blocked matrix multiply C = A * B on Tensor storage.
+// C is cut into MC x nc tiles that are computed independently on the fork/join pool.
+// Each tile walks K in KC-deep slabs: the KC x nc panel of B is packed into a
+// contiguous buffer that stays in L2 while every row of the A block streams over it.
+// Every C element still sums its k terms in ascending order, so with the scalar
+// kernels results match the plain i-k-j loop.
+public final class Gemm {
+    static final int MC = 64;   // rows of A / C per tile
+    static final int KC = 256;  // depth of a packed B panel
+    static final int NC = 512;  // max columns of B / C per tile
+    static final int MIN_NC = 64;
+    // Below this many multiply-adds the fork/join overhead outweighs the work
+    static final long PARALLEL_THRESHOLD = 1L << 16;
+
+    // Multiply state and packed B panels, one per thread and reused by every multiply, so
+    // steady-state calls allocate nothing
+    private static final ThreadLocal<TileJob> JOB = ThreadLocal.withInitial(TileJob::new);
+    private static final ThreadLocal<double[]> DOUBLE_PANEL = ThreadLocal.withInitial(() -> new double[KC * NC]);
+    private static final ThreadLocal<float[]> FLOAT_PANEL = ThreadLocal.withInitial(() -> new float[KC * NC]);
+
+    private Gemm() {
+    }
+
+    // c must be a zero-filled (m, n) tensor; a and c must have unit column stride.
+    // All three must share one precision.
+    public static void multiply(Tensor a, Tensor b, Tensor c) {
+        int m = a.size(0);
+        int k = a.size(1);
+        int n = b.size(1);
+        if (b.size(0) != k || c.size(0) != m || c.size(1) != n) {
+            throw new IllegalArgumentException("Matrix dimensions are not compatible for multiplication.");
+        }
+        if (a.stride(1) != 1 || c.stride(1) != 1) {
+            throw new IllegalArgumentException("Gemm requires unit-stride rows of A and C.");
+        }
+        if (m == 0 || n == 0 || k == 0) {
+            return;
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        boolean parallel = (long) m * n * k >= PARALLEL_THRESHOLD && pool.getParallelism() > 1;
+
+        // Narrow the column tiles when there are too few row blocks to keep every core busy (decode: m == 1)
+        int rowBlocks = (m + MC - 1) / MC;
+        int nc = NC;
+        if (parallel) {
+            while (nc > MIN_NC && rowBlocks * ((n + nc - 1) / nc) < pool.getParallelism()) {
+                nc /= 2;
+            }
+        }
+        int colBlocks = (n + nc - 1) / nc;
+
+        TileJob job = JOB.get();
+        if (job.c != null) {
+            job = new TileJob(); // a multiply nested in another on this thread, see ParallelSlices
+        }
+        job.a = a;
+        job.b = b;
+        job.c = c;
+        job.nc = nc;
+        job.colBlocks = colBlocks;
+        try {
+            if (parallel) {
+                ParallelSlices.run(pool, job, rowBlocks * colBlocks);
+            } else {
+                for (int tile = 0; tile < rowBlocks * colBlocks; tile++) {
+                    job.slice(tile);
+                }
+            }
+        } finally {
+            job.a = null;
+            job.b = null;
+            job.c = null;
+        }
+    }
+
+    // One multiply, a slice per MC x nc tile of C. Kept per calling thread and refilled by every call.
+    private static final class TileJob implements ParallelSlices.Job {
+        private Tensor a;
+        private Tensor b;
+        private Tensor c;
+        private int nc;
+        private int colBlocks;
+
+        @Override
+        public void slice(int tile) {
+            if (c.precision() == Precision.FLOAT32) {
+                tileFloat(tile, FLOAT_PANEL.get());
+            } else {
+                tileDouble(tile, DOUBLE_PANEL.get());
+            }
+        }
+
+        private void tileDouble(int tile, double[] panel) {
+            int m = a.size(0);
+            int k = a.size(1);
+            int n = b.size(1);
+            int i0 = (tile / colBlocks) * MC;
+            int i1 = Math.min(m, i0 + MC);
+            int j0 = (tile % colBlocks) * nc;
+            int width = Math.min(n, j0 + nc) - j0;
+            double[] aData = a.data();
+            double[] bData = b.data();
+            double[] cData = c.data();
+            for (int k0 = 0; k0 < k; k0 += KC) {
+                int depth = Math.min(k, k0 + KC) - k0;
+                packDouble(bData, k0, depth, j0, width, panel);
+                for (int i = i0; i < i1; i++) {
+                    int aRow = a.offset() + i * a.stride(0) + k0;
+                    int cRow = c.offset() + i * c.stride(0) + j0;
+                    for (int kk = 0; kk < depth; kk++) {
+                        Kernels.ACTIVE.axpy(aData[aRow + kk], panel, kk * width, cData, cRow, width);
+                    }
+                }
+            }
+        }
+
+        private void tileFloat(int tile, float[] panel) {
+            int m = a.size(0);
+            int k = a.size(1);
+            int n = b.size(1);
+            int i0 = (tile / colBlocks) * MC;
+            int i1 = Math.min(m, i0 + MC);
+            int j0 = (tile % colBlocks) * nc;
+            int width = Math.min(n, j0 + nc) - j0;
+            float[] aData = a.floatData();
+            float[] bData = b.floatData();
+            float[] cData = c.floatData();
+            for (int k0 = 0; k0 < k; k0 += KC) {
+                int depth = Math.min(k, k0 + KC) - k0;
+                packFloat(bData, k0, depth, j0, width, panel);
+                for (int i = i0; i < i1; i++) {
+                    int aRow = a.offset() + i * a.stride(0) + k0;
+                    int cRow = c.offset() + i * c.stride(0) + j0;
+                    for (int kk = 0; kk < depth; kk++) {
+                        Kernels.ACTIVE.axpy(aData[aRow + kk], panel, kk * width, cData, cRow, width);
+                    }
+                }
+            }
+        }
+
+        // Copies B[k0 : k0 + depth, j0 : j0 + width] row-major into panel, whatever B's strides are
+        private void packDouble(double[] bData, int k0, int depth, int j0, int width, double[] panel) {
+            int rowStride = b.stride(0);
+            int colStride = b.stride(1);
+            for (int kk = 0; kk < depth; kk++) {
+                int src = b.offset() + (k0 + kk) * rowStride + j0 * colStride;
+                int dst = kk * width;
+                if (colStride == 1) {
+                    System.arraycopy(bData, src, panel, dst, width);
+                } else {
+                    for (int j = 0; j < width; j++) {
+                        panel[dst + j] = bData[src + j * colStride];
+                    }
+                }
+            }
+        }
+
+        private void packFloat(float[] bData, int k0, int depth, int j0, int width, float[] panel) {
+            int rowStride = b.stride(0);
+            int colStride = b.stride(1);
+            for (int kk = 0; kk < depth; kk++) {
+                int src = b.offset() + (k0 + kk) * rowStride + j0 * colStride;
+                int dst = kk * width;
+                if (colStride == 1) {
+                    System.arraycopy(bData, src, panel, dst, width);
+                } else {
+                    for (int j = 0; j < width; j++) {
+                        panel[dst + j] = bData[src + j * colStride];
+                    }
+                }
+            }
+        }
+    }
+}
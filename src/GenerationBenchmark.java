@@ -0,0 +1,370 @@
+import com.google.gson.GsonBuilder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+// End-to-end generation benchmark. Each prompt is generated greedily through Generator, timing the
+// prefill (prompt pass plus first token) apart from every later decode step, after a number of
+// untimed warm-up passes over all prompts. Reports latency percentiles, throughput, heap and
+// allocation figures, and writes them as JSON and CSV. Synthetic mode uses seeded random weights,
+// so runs on different builds do the same work and produce the same tokens.
+public class GenerationBenchmark {
+    private final GPTModel model;
+    private final BytePairEncoding.Encoder encoder;
+    private int maxNewTokens = 32;
+    private int warmupRuns = 1;
+    private int runs = 3;
+    private boolean profile;
+
+    public GenerationBenchmark(GPTModel model, BytePairEncoding.Encoder encoder) {
+        this.model = model;
+        this.encoder = encoder;
+    }
+
+    public GenerationBenchmark setMaxNewTokens(int maxNewTokens) {
+        if (maxNewTokens < 1) {
+            throw new IllegalArgumentException("At least one new token must be generated.");
+        }
+        this.maxNewTokens = maxNewTokens;
+        return this;
+    }
+
+    public GenerationBenchmark setWarmupRuns(int warmupRuns) {
+        if (warmupRuns < 0) {
+            throw new IllegalArgumentException("Warm-up runs must be non-negative.");
+        }
+        this.warmupRuns = warmupRuns;
+        return this;
+    }
+
+    public GenerationBenchmark setRuns(int runs) {
+        if (runs < 1) {
+            throw new IllegalArgumentException("At least one measured run is needed.");
+        }
+        this.runs = runs;
+        return this;
+    }
+
+    // Profiles the measured runs (not the warm-up), see Profiler.report()
+    public GenerationBenchmark setProfile(boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public Report run(List<String> prompts) {
+        if (prompts.isEmpty()) {
+            throw new IllegalArgumentException("No prompts to benchmark.");
+        }
+        Generator generator = new Generator(model, encoder).setMaxNewTokens(maxNewTokens);
+        // Tokenized once, so neither BPE time nor its garbage lands in the measured runs
+        int[][] promptTokens = prompts.stream()
+            .map(prompt -> encoder.encode(prompt).stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        for (int r = 0; r < warmupRuns; r++) {
+            for (int[] prompt : promptTokens) {
+                generate(generator, prompt);
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP).collect(Collectors.toList());
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes(threads);
+
+        List<Sample> samples = new ArrayList<>();
+        if (profile) {
+            Profiler.reset();
+            Profiler.setEnabled(true);
+        }
+        long start = System.nanoTime();
+        try {
+            for (int r = 0; r < runs; r++) {
+                for (int p = 0; p < prompts.size(); p++) {
+                    Generator.Generation generation = generate(generator, promptTokens[p]);
+                    samples.add(new Sample(r, p, promptTokens[p].length, generation));
+                }
+            }
+        } finally {
+            if (profile) {
+                Profiler.setEnabled(false);
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        Report report = new Report();
+        report.precision = model.getPrecision().name();
+        report.kernels = Kernels.ACTIVE.name();
+        report.prompts = prompts.size();
+        report.warmupRuns = warmupRuns;
+        report.runs = runs;
+        report.maxNewTokens = maxNewTokens;
+        report.wallSeconds = wallNanos / 1e9;
+        report.allocatedBytes = allocatedBytes(threads) - allocated;
+        report.gcCount = gcCount() - gcCount;
+        report.gcMillis = gcMillis() - gcMillis;
+        report.peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        report.heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        report.summarize(samples);
+        return report;
+    }
+
+    private Generator.Generation generate(Generator generator, int[] prompt) {
+        Generator.Generation generation = generator.start(prompt, new Sampler(model.getVocabSize(), 0).setTemperature(0));
+        while (generation.hasNext()) {
+            generation.next();
+        }
+        return generation;
+    }
+
+    // Bytes allocated so far by every live thread, so GEMM tiles and attention heads running on pool
+    // threads are counted too
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads) {
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(b -> b > 0).sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    // Nearest-rank percentile of sorted values, in (0, 100]
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    // Fills every weight from a seeded generator: N(0, 0.02) for matrices and embeddings,
+    // 1 for LayerNorm scales, 0 for biases and LayerNorm shifts
+    public static void seedWeights(GPTModel model, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (Map.Entry<String, Tensor> parameter : model.namedParameters().entrySet()) {
+            String name = parameter.getKey();
+            Tensor tensor = parameter.getValue();
+            boolean scale = name.matches(".*ln_(1|2|f)\\.weight");
+            boolean zero = name.endsWith(".bias");
+            for (int i = 0; i < tensor.numel(); i++) {
+                tensor.setFlat(i, scale ? 1.0 : zero ? 0.0 : 0.02 * gaussian(random));
+            }
+        }
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * random.nextDouble());
+    }
+
+    // One token per byte, for synthetic runs without the GPT-2 vocabulary files; ids past 255
+    // decode as "<|id|>" so anything the model generates can be printed
+    public static BytePairEncoding.Encoder byteEncoder(int vocabSize) {
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            vocab.put(bytes.get(b), b);
+        }
+        for (int id = 256; id < vocabSize; id++) {
+            vocab.put("<|" + id + "|>", id);
+        }
+        return new BytePairEncoding.Encoder(vocab, new ArrayList<>(), "replace");
+    }
+
+    public static final class Sample {
+        public final int run;
+        public final int prompt;
+        public final int promptTokens;
+        public final int generatedTokens;
+        public final long prefillNanos;     // prompt pass plus the first token
+        public final long[] decodeNanos;    // every later token
+        public final int outputHash;
+
+        Sample(int run, int prompt, int promptTokens, Generator.Generation generation) {
+            long[] latencies = generation.getTokenLatenciesNanos();
+            this.run = run;
+            this.prompt = prompt;
+            this.promptTokens = promptTokens;
+            this.generatedTokens = latencies.length;
+            this.prefillNanos = latencies.length > 0 ? latencies[0] : 0;
+            this.decodeNanos = latencies.length > 1 ? Arrays.copyOfRange(latencies, 1, latencies.length) : new long[0];
+            this.outputHash = Arrays.hashCode(generation.getTokens());
+        }
+
+        long totalNanos() {
+            return prefillNanos + Arrays.stream(decodeNanos).sum();
+        }
+    }
+
+    public static final class Report {
+        public String precision;
+        public String kernels;
+        public int prompts;
+        public int warmupRuns;
+        public int runs;
+        public int maxNewTokens;
+        public double wallSeconds;
+
+        public double prefillP50Millis;
+        public double prefillP95Millis;
+        public double prefillP99Millis;
+        public double prefillTokensPerSecond;  // prompt tokens over prefill time
+        public double decodeP50Millis;
+        public double decodeP95Millis;
+        public double decodeP99Millis;
+        public double decodeTokensPerSecond;   // decode tokens over decode time
+        public double tokensPerSecond;         // generated tokens over wall time
+        public long generatedTokens;
+        public int outputHash;                 // equal across builds when the generated tokens are
+
+        public long allocatedBytes;            // by all threads, including the fork/join pools
+        public double allocatedBytesPerToken;
+        public long peakHeapBytes;
+        public long heapUsedBytes;
+        public long gcCount;
+        public long gcMillis;
+
+        public transient List<Sample> samples;
+
+        void summarize(List<Sample> samples) {
+            this.samples = samples;
+            long[] prefill = samples.stream().mapToLong(s -> s.prefillNanos).sorted().toArray();
+            long[] decode = samples.stream().flatMapToLong(s -> Arrays.stream(s.decodeNanos)).sorted().toArray();
+            long promptTokens = samples.stream().mapToLong(s -> s.promptTokens).sum();
+            generatedTokens = samples.stream().mapToLong(s -> s.generatedTokens).sum();
+            prefillP50Millis = percentile(prefill, 50) / 1e6;
+            prefillP95Millis = percentile(prefill, 95) / 1e6;
+            prefillP99Millis = percentile(prefill, 99) / 1e6;
+            decodeP50Millis = percentile(decode, 50) / 1e6;
+            decodeP95Millis = percentile(decode, 95) / 1e6;
+            decodeP99Millis = percentile(decode, 99) / 1e6;
+            long prefillSum = Arrays.stream(prefill).sum();
+            long decodeSum = Arrays.stream(decode).sum();
+            prefillTokensPerSecond = prefillSum == 0 ? 0.0 : promptTokens / (prefillSum / 1e9);
+            decodeTokensPerSecond = decodeSum == 0 ? 0.0 : decode.length / (decodeSum / 1e9);
+            tokensPerSecond = wallSeconds == 0 ? 0.0 : generatedTokens / wallSeconds;
+            allocatedBytesPerToken = generatedTokens == 0 ? 0.0 : (double) allocatedBytes / generatedTokens;
+            outputHash = Arrays.hashCode(samples.stream().filter(s -> s.run == 0).mapToInt(s -> s.outputHash).toArray());
+        }
+
+        public String toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("summary", this);
+            json.put("samples", samples.stream().map(s -> {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("run", s.run);
+                row.put("prompt", s.prompt);
+                row.put("promptTokens", s.promptTokens);
+                row.put("generatedTokens", s.generatedTokens);
+                row.put("prefillMillis", s.prefillNanos / 1e6);
+                row.put("decodeMillis", Arrays.stream(s.decodeNanos).mapToDouble(n -> n / 1e6).toArray());
+                return row;
+            }).collect(Collectors.toList()));
+            return new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create().toJson(json);
+        }
+
+        // One row per generation
+        public String toCsv() {
+            StringBuilder csv = new StringBuilder("run,prompt,prompt_tokens,generated_tokens,prefill_ms,decode_mean_ms,decode_max_ms,total_ms\n");
+            for (Sample s : samples) {
+                double mean = Arrays.stream(s.decodeNanos).average().orElse(0.0) / 1e6;
+                double max = Arrays.stream(s.decodeNanos).max().orElse(0) / 1e6;
+                csv.append(String.format("%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f%n", s.run, s.prompt, s.promptTokens,
+                                         s.generatedTokens, s.prefillNanos / 1e6, mean, max, s.totalNanos() / 1e6));
+            }
+            return csv.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d prompts x %d runs (%d warm-up), %d new tokens each, %s on %s kernels%n"
+                                 + "prefill: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, %.0f prompt tokens/s%n"
+                                 + "decode:  p50 %.1f ms, p95 %.1f ms, p99 %.1f ms per token, %.2f tokens/s%n"
+                                 + "overall: %d tokens in %.1f s, %.2f tokens/s, output hash %08x%n"
+                                 + "memory:  %.1f MB allocated (%.0f KB/token), peak heap %.0f MB, %d GCs in %d ms",
+                                 prompts, runs, warmupRuns, maxNewTokens, precision, kernels,
+                                 prefillP50Millis, prefillP95Millis, prefillP99Millis, prefillTokensPerSecond,
+                                 decodeP50Millis, decodeP95Millis, decodeP99Millis, decodeTokensPerSecond,
+                                 generatedTokens, wallSeconds, tokensPerSecond, outputHash,
+                                 allocatedBytes / 1e6, allocatedBytesPerToken / 1e3, peakHeapBytes / 1e6, gcCount, gcMillis);
+        }
+    }
+
+    // Usage: GenerationBenchmark [--prompts src/inputs.txt] [--weights gpt2_weights.json | --synthetic]
+    //        [--models models] [--precision FLOAT64|FLOAT32] [--layers 12] [--new-tokens 32]
+    //        [--warmup 1] [--runs 3] [--seed 42] [--json report.json] [--csv report.csv]
+    //        [--profile [--peak-gflops N --peak-gbps N]]
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--synthetic") || args[i].equals("--profile")) {
+                options.put(args[i].substring(2), "true");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        boolean synthetic = options.containsKey("synthetic");
+        Precision precision = Precision.valueOf(options.getOrDefault("precision", "FLOAT64"));
+        int layers = Integer.parseInt(options.getOrDefault("layers", "12"));
+
+        List<String> prompts = Files.readAllLines(Paths.get(options.getOrDefault("prompts", "src/inputs.txt")), StandardCharsets.UTF_8)
+            .stream().filter(line -> !line.isBlank()).collect(Collectors.toList());
+        GPTModel model = new GPTModel(50257, 768, 1024, layers, 12, 0.0, precision);
+        BytePairEncoding.Encoder encoder;
+        Path vocab = Paths.get(options.getOrDefault("models", "models"), "gpt2", "encoder.json");
+        if (synthetic) {
+            seedWeights(model, Long.parseLong(options.getOrDefault("seed", "42")));
+            encoder = Files.exists(vocab) ? BytePairEncoding.getEncoder("gpt2", options.getOrDefault("models", "models")) : byteEncoder(model.getVocabSize());
+        } else {
+            String weights = options.getOrDefault("weights", "gpt2_weights.json");
+            model.loadWeights(weights.endsWith(".safetensors") ? new SafetensorsLoader(weights) : new JsonWeightsLoader(weights));
+            encoder = BytePairEncoding.getEncoder("gpt2", options.getOrDefault("models", "models"));
+        }
+
+        Report report = new GenerationBenchmark(model, encoder)
+            .setMaxNewTokens(Integer.parseInt(options.getOrDefault("new-tokens", "32")))
+            .setWarmupRuns(Integer.parseInt(options.getOrDefault("warmup", "1")))
+            .setRuns(Integer.parseInt(options.getOrDefault("runs", "3")))
+            .setProfile(options.containsKey("profile"))
+            .run(prompts);
+        System.out.println(report);
+        if (options.containsKey("profile")) {
+            System.out.println();
+            System.out.print(Profiler.report(Double.parseDouble(options.getOrDefault("peak-gflops", "0")),
+                                             Double.parseDouble(options.getOrDefault("peak-gbps", "0"))));
+        }
+        if (options.containsKey("json")) {
+            write(Paths.get(options.get("json")), report.toJson());
+        }
+        if (options.containsKey("csv")) {
+            write(Paths.get(options.get("csv")), report.toCsv());
+        }
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.ToIntFunction;
+
+// Continuous (iteration-level) batching over one shared model. Requests wait in a queue and
+// join the running batch at the next decode step as soon as a slot is free; finished requests
+// leave at the step they finish, so short requests never wait for long ones to drain.
+// Every request decodes in its own Session (its own keys and values); each step runs all of
+// them through a single GPTModel.forward(Session[], int[][]) call. Prompts are prefilled in
+// chunks so that one long prompt only takes the token budget left over by the decoders.
+public class GenerationEngine implements AutoCloseable {
+    private final GPTModel model;
+    private final int maxBatchSize;   // sequences per step
+    private final int maxBatchTokens; // tokens per step, decoders first, the rest goes to prefill chunks
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final List<Request> active = new ArrayList<>();
+    private final ArrayDeque<GPTModel.Session> freeSessions = new ArrayDeque<>();
+    private final Thread worker;
+    private volatile boolean closed;
+    private volatile Throwable failure; // what stopped the worker, if it died
+
+    // Counters, guarded by this
+    private long submitted;
+    private long admitted;
+    private long completed;
+    private long steps;
+    private long batchedSequences;
+    private long promptTokens;
+    private long generatedTokens;
+    private long totalQueueNanos;
+    private long maxQueueNanos;
+    private long busyNanos;
+    private long firstSubmitNanos = -1;
+
+    public GenerationEngine(GPTModel model, int maxBatchSize) {
+        this(model, maxBatchSize, 512);
+    }
+
+    public GenerationEngine(GPTModel model, int maxBatchSize, int maxBatchTokens) {
+        if (maxBatchSize < 1 || maxBatchTokens < maxBatchSize) {
+            throw new IllegalArgumentException("Need maxBatchSize >= 1 and maxBatchTokens >= maxBatchSize.");
+        }
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.worker = new Thread(this::run, "generation-engine");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Greedy decoding
+    public CompletableFuture<Result> submit(int[] prompt, int maxNewTokens) {
+        return submit(prompt, maxNewTokens, GenerationEngine::argmax);
+    }
+
+    // Generates up to maxNewTokens tokens after prompt, or until the context is full.
+    // selector picks the next token from the (1, vocabSize) logits; it runs on the engine thread.
+    // Cancelling the returned future removes the request from the batch at the next step.
+    public CompletableFuture<Result> submit(int[] prompt, int maxNewTokens, ToIntFunction<Matrix> selector) {
+        if (prompt.length == 0 || prompt.length > model.getContextLength()) {
+            throw new IllegalArgumentException("Prompt length must be between 1 and the context length.");
+        }
+        if (maxNewTokens < 1) {
+            throw new IllegalArgumentException("maxNewTokens must be at least 1.");
+        }
+        Request request = new Request(prompt.clone(), maxNewTokens, selector);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException(failure != null ? "Generation engine failed." : "Generation engine is closed.",
+                                                failure);
+            }
+            submitted++;
+            if (firstSubmitNanos < 0) {
+                firstSubmitNanos = request.submitNanos;
+            }
+            queue.add(request);
+        }
+        return request.result;
+    }
+
+    // Stops the engine; queued and running requests complete exceptionally
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IllegalStateException error = new IllegalStateException("Generation engine is closed.");
+        for (Request request : active) {
+            request.result.completeExceptionally(error);
+        }
+        active.clear();
+        for (Request request; (request = queue.poll()) != null; ) {
+            request.result.completeExceptionally(error);
+        }
+    }
+
+    public synchronized Metrics getMetrics() {
+        long elapsed = firstSubmitNanos < 0 ? 0 : System.nanoTime() - firstSubmitNanos;
+        return new Metrics(submitted, admitted, completed, queue.size(), steps, batchedSequences, promptTokens, generatedTokens,
+                           totalQueueNanos, maxQueueNanos, busyNanos, elapsed);
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                try {
+                    admit();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                step();
+            }
+        } catch (Throwable t) {
+            // Nothing serves the requests once this thread dies, so fail them all before it does
+            fail(t);
+            throw t;
+        }
+    }
+
+    // Closes the engine after the worker hit error; running and queued requests complete with it
+    private void fail(Throwable error) {
+        synchronized (this) {
+            closed = true; // no submit can queue a request after the drain below
+            failure = error;
+        }
+        for (Request request : active) {
+            request.result.completeExceptionally(error);
+        }
+        active.clear();
+        for (Request request; (request = queue.poll()) != null; ) {
+            request.result.completeExceptionally(error);
+        }
+    }
+
+    // Moves queued requests into free batch slots; blocks only while nothing is running
+    private void admit() throws InterruptedException {
+        while (active.size() < maxBatchSize) {
+            Request request = active.isEmpty() ? queue.take() : queue.poll();
+            if (request == null) {
+                return;
+            }
+            if (request.result.isDone()) {
+                continue; // cancelled while queued
+            }
+            GPTModel.Session session = freeSessions.poll();
+            if (session == null) {
+                session = model.newSession();
+            }
+            session.reset();
+            request.session = session;
+            long wait = System.nanoTime() - request.submitNanos;
+            synchronized (this) {
+                admitted++;
+                totalQueueNanos += wait;
+                maxQueueNanos = Math.max(maxQueueNanos, wait);
+            }
+            request.queueNanos = wait;
+            active.add(request);
+        }
+    }
+
+    private void step() {
+        active.removeIf(request -> {
+            if (request.result.isDone()) {
+                release(request);
+                return true;
+            }
+            return false;
+        });
+        if (active.isEmpty()) {
+            return;
+        }
+
+        // Decoders take one token each; prefill chunks share what is left, oldest request first
+        int budget = maxBatchTokens;
+        for (Request request : active) {
+            if (request.prefilled == request.prompt.length) {
+                budget--;
+            }
+        }
+        List<Request> batch = new ArrayList<>(active.size());
+        List<int[]> tokens = new ArrayList<>(active.size());
+        for (Request request : active) {
+            if (request.prefilled == request.prompt.length) {
+                batch.add(request);
+                tokens.add(new int[] { request.tokens[request.generated - 1] });
+            } else if (budget > 0) {
+                int n = Math.min(budget, request.prompt.length - request.prefilled);
+                batch.add(request);
+                tokens.add(Arrays.copyOfRange(request.prompt, request.prefilled, request.prefilled + n));
+                budget -= n;
+            }
+        }
+
+        GPTModel.Session[] sessions = new GPTModel.Session[batch.size()];
+        for (int s = 0; s < sessions.length; s++) {
+            sessions[s] = batch.get(s).session;
+        }
+        long start = System.nanoTime();
+        Matrix[] logits;
+        try {
+            logits = model.forward(sessions, tokens.toArray(new int[0][]));
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return; // failed requests are released at the next step
+        }
+
+        int stepPrompt = 0;
+        int stepGenerated = 0;
+        List<Request> finished = new ArrayList<>();
+        for (int s = 0; s < sessions.length; s++) {
+            Request request = batch.get(s);
+            if (request.prefilled < request.prompt.length) {
+                request.prefilled += tokens.get(s).length;
+                stepPrompt += tokens.get(s).length;
+                if (request.prefilled < request.prompt.length) {
+                    continue; // logits of a partial prompt are not needed
+                }
+            }
+            int next;
+            try {
+                next = request.selector.applyAsInt(logits[s]);
+            } catch (RuntimeException e) {
+                request.result.completeExceptionally(e);
+                continue;
+            }
+            request.tokens[request.generated++] = next;
+            stepGenerated++;
+            // The next step would need one more position than the cache holds
+            if (request.generated == request.tokens.length || request.session.getLength() >= model.getContextLength()) {
+                finished.add(request);
+            }
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            steps++;
+            batchedSequences += sessions.length;
+            promptTokens += stepPrompt;
+            generatedTokens += stepGenerated;
+            busyNanos += now - start;
+            completed += finished.size();
+        }
+        for (Request request : finished) {
+            active.remove(request);
+            release(request);
+            request.result.complete(new Result(Arrays.copyOf(request.tokens, request.generated),
+                                               request.queueNanos, now - request.submitNanos));
+        }
+    }
+
+    private void release(Request request) {
+        if (request.session != null) {
+            freeSessions.push(request.session);
+            request.session = null;
+        }
+    }
+
+    public static int argmax(Matrix logits) {
+        int best = 0;
+        for (int j = 1; j < logits.getCols(); j++) {
+            if (logits.get(0, j) > logits.get(0, best)) {
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    private static final class Request {
+        final int[] prompt;
+        final int[] tokens; // generated so far
+        final ToIntFunction<Matrix> selector;
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        final long submitNanos = System.nanoTime();
+        long queueNanos;
+        int prefilled;
+        int generated;
+        GPTModel.Session session;
+
+        Request(int[] prompt, int maxNewTokens, ToIntFunction<Matrix> selector) {
+            this.prompt = prompt;
+            this.tokens = new int[maxNewTokens];
+            this.selector = selector;
+        }
+    }
+
+    public static final class Result {
+        public final int[] tokens;     // generated tokens, prompt excluded
+        public final long queueNanos;  // submit until the request joined the batch
+        public final long latencyNanos; // submit until the last token
+
+        Result(int[] tokens, long queueNanos, long latencyNanos) {
+            this.tokens = tokens;
+            this.queueNanos = queueNanos;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    // Snapshot of the engine counters
+    public static final class Metrics {
+        public final long submitted;
+        public final long completed;
+        public final int queued;
+        public final long steps;
+        public final long promptTokens;
+        public final long generatedTokens;
+        public final double meanBatchSize;
+        public final double meanQueueMillis;
+        public final double maxQueueMillis;
+        public final double tokensPerSecond;     // generated tokens over wall time since the first submit
+        public final double busyTokensPerSecond; // generated tokens over time spent in forward passes
+
+        Metrics(long submitted, long admitted, long completed, int queued, long steps, long batchedSequences, long promptTokens,
+                long generatedTokens, long totalQueueNanos, long maxQueueNanos, long busyNanos, long elapsedNanos) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.queued = queued;
+            this.steps = steps;
+            this.promptTokens = promptTokens;
+            this.generatedTokens = generatedTokens;
+            this.meanBatchSize = steps == 0 ? 0.0 : (double) batchedSequences / steps;
+            this.meanQueueMillis = admitted == 0 ? 0.0 : totalQueueNanos / 1e6 / admitted;
+            this.maxQueueMillis = maxQueueNanos / 1e6;
+            this.tokensPerSecond = elapsedNanos == 0 ? 0.0 : generatedTokens * 1e9 / elapsedNanos;
+            this.busyTokensPerSecond = busyNanos == 0 ? 0.0 : generatedTokens * 1e9 / busyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests %d/%d done, %d queued | %d steps, mean batch %.2f | prompt %d, generated %d tokens"
+                                 + " | %.1f tok/s (%.1f tok/s busy) | queue wait mean %.1f ms, max %.1f ms",
+                                 completed, submitted, queued, steps, meanBatchSize, promptTokens, generatedTokens,
+                                 tokensPerSecond, busyTokensPerSecond, meanQueueMillis, maxQueueMillis);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Text generation on top of a model and its tokenizer, one token at a time. A Generation is
+// an Iterator of Tokens that runs one decode step per next(), so callers see each token as it
+// is produced; generate() drives it with a callback and publish() exposes it as a
+// Flow.Publisher with backpressure. Every Generation records its time to first token and the
+// latency of each step.
+public class Generator {
+    public enum FinishReason { LENGTH, CONTEXT_FULL, STOP_TOKEN, STOP_STRING, CANCELLED }
+
+    // Handed to subscribers that are rejected before anything can be requested
+    private static final Flow.Subscription NO_DEMAND = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final GPTModel model;
+    private final BytePairEncoding.Encoder encoder;
+    private int maxNewTokens = 64;
+    private int[] stopTokens = {};
+    private String[] stopStrings = {};
+
+    public Generator(GPTModel model, BytePairEncoding.Encoder encoder) {
+        this.model = model;
+        this.encoder = encoder;
+    }
+
+    public Generator setMaxNewTokens(int maxNewTokens) {
+        if (maxNewTokens < 1) {
+            throw new IllegalArgumentException("maxNewTokens must be at least 1.");
+        }
+        this.maxNewTokens = maxNewTokens;
+        return this;
+    }
+
+    // Generation ends when one of these is sampled; the stop token itself is not emitted
+    public Generator setStopTokens(int... stopTokens) {
+        this.stopTokens = stopTokens.clone();
+        return this;
+    }
+
+    // Generation ends once the text contains one of these; the text is cut before it.
+    // Text streamed before the match completes is not taken back.
+    public Generator setStopStrings(String... stopStrings) {
+        for (String stop : stopStrings) {
+            if (stop.isEmpty()) {
+                throw new IllegalArgumentException("Stop strings must not be empty.");
+            }
+        }
+        this.stopStrings = stopStrings.clone();
+        return this;
+    }
+
+    // Nothing runs until the returned Generation is iterated.
+    // sampler holds per-sequence state, so pass a fresh one per call; it also sees the prompt for its penalties.
+    public Generation start(String prompt, Sampler sampler) {
+        List<Integer> tokens = encoder.encode(prompt);
+        return start(tokens.stream().mapToInt(Integer::intValue).toArray(), sampler);
+    }
+
+    public Generation start(int[] prompt, Sampler sampler) {
+        if (prompt.length == 0 || prompt.length > model.getContextLength()) {
+            throw new IllegalArgumentException("Prompt length must be between 1 and the context length.");
+        }
+        return new Generation(prompt.clone(), sampler);
+    }
+
+    // Runs to completion on the calling thread, handing each token to onToken as soon as it is sampled
+    public Generation generate(String prompt, Sampler sampler, Consumer<Token> onToken) {
+        Generation generation = start(prompt, sampler);
+        while (generation.hasNext()) {
+            onToken.accept(generation.next());
+        }
+        return generation;
+    }
+
+    // Publishes the tokens of one generation to a single subscriber. Decode steps run on executor
+    // only while the subscriber has outstanding demand; cancelling the subscription cancels the generation.
+    public Flow.Publisher<Token> publish(String prompt, Sampler sampler, Executor executor) {
+        AtomicBoolean subscribed = new AtomicBoolean();
+        return subscriber -> {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(NO_DEMAND);
+                subscriber.onError(new IllegalStateException("This publisher supports a single subscriber."));
+                return;
+            }
+            Generation generation;
+            try {
+                generation = start(prompt, sampler);
+            } catch (RuntimeException e) {
+                subscriber.onSubscribe(NO_DEMAND);
+                subscriber.onError(e);
+                return;
+            }
+            subscriber.onSubscribe(new TokenSubscription(generation, subscriber, executor));
+        };
+    }
+
+    // One generated token: its id, the text it completes and how long its decode step took
+    public static final class Token {
+        public final int id;
+        public final int index;          // position among the generated tokens
+        public final String text;        // new text; empty while a multi-byte character is incomplete
+        public final long latencyNanos;  // model step plus sampling; includes the prefill for index 0
+
+        Token(int id, int index, String text, long latencyNanos) {
+            this.id = id;
+            this.index = index;
+            this.text = text;
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + text;
+        }
+    }
+
+    public final class Generation implements Iterator<Token> {
+        private final int[] prompt;
+        private final Sampler sampler;
+        private final GPTModel.Session session;
+        private final int[] tokens = new int[maxNewTokens];
+        private final long[] latencies = new long[maxNewTokens];
+        private final int[] stops = stopTokens;
+        private final String[] stopTexts = stopStrings;
+        private final StringBuilder text = new StringBuilder();
+        private final long createdNanos = System.nanoTime();
+        private long firstTokenNanos = -1;
+        private int count;
+        private final BytePairEncoding.Encoder.StreamDecoder decoder = encoder.newStreamDecoder();
+        private Token lookahead;
+        private volatile boolean cancelled;
+        private volatile FinishReason finishReason;
+
+        private Generation(int[] prompt, Sampler sampler) {
+            this.prompt = prompt;
+            this.sampler = sampler;
+            this.session = model.newSession();
+            sampler.observe(prompt);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (lookahead == null && finishReason == null) {
+                lookahead = step();
+            }
+            return lookahead != null;
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Token token = lookahead;
+            lookahead = null;
+            return token;
+        }
+
+        // Stops before the next decode step; safe to call from any thread
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isDone() {
+            return finishReason != null && lookahead == null;
+        }
+
+        // null while the generation is running
+        public FinishReason getFinishReason() {
+            return finishReason;
+        }
+
+        public int[] getTokens() {
+            return Arrays.copyOf(tokens, count);
+        }
+
+        public String getText() {
+            return text.toString();
+        }
+
+        // From start() to the first sampled token, prompt encoding excluded; -1 before it exists
+        public long getTimeToFirstTokenNanos() {
+            return firstTokenNanos < 0 ? -1 : firstTokenNanos - createdNanos;
+        }
+
+        // Duration of the decode step of each emitted token; entry 0 is the prefill. A step that
+        // sampled a stop token emits nothing and is not included, see getStepLatenciesNanos()
+        public long[] getTokenLatenciesNanos() {
+            return Arrays.copyOf(latencies, count);
+        }
+
+        // Duration of every decode step run, including a final one that sampled a stop token
+        public long[] getStepLatenciesNanos() {
+            return Arrays.copyOf(latencies, finishReason == FinishReason.STOP_TOKEN ? count + 1 : count);
+        }
+
+        // Mean step time after the first token, 0 if there is none
+        public double getMeanDecodeLatencyNanos() {
+            if (count < 2) {
+                return 0.0;
+            }
+            long sum = 0;
+            for (int i = 1; i < count; i++) {
+                sum += latencies[i];
+            }
+            return (double) sum / (count - 1);
+        }
+
+        private Token step() {
+            if (cancelled) {
+                finish(FinishReason.CANCELLED);
+                return null;
+            }
+            long start = System.nanoTime();
+            Matrix logits = count == 0 ? session.prefill(prompt) : session.next(tokens[count - 1]);
+            int id = sampler.sample(logits);
+            long end = System.nanoTime();
+            if (firstTokenNanos < 0) {
+                firstTokenNanos = end;
+            }
+            for (int stop : stops) {
+                if (id == stop) {
+                    latencies[count] = end - start; // count < maxNewTokens, or the generation would be done
+                    finish(FinishReason.STOP_TOKEN);
+                    return null;
+                }
+            }
+            int index = count;
+            tokens[count] = id;
+            latencies[count] = end - start;
+            count++;
+
+            String delta = decoder.accept(id);
+            boolean last = count == tokens.length || session.getLength() >= model.getContextLength();
+            if (last) {
+                delta += decoder.flush();
+            }
+            text.append(delta);
+            int stopAt = findStop(delta.length());
+            if (stopAt >= 0) {
+                int before = text.length() - delta.length();
+                delta = stopAt > before ? text.substring(before, stopAt) : "";
+                text.setLength(stopAt);
+                finishReason = FinishReason.STOP_STRING;
+            } else if (count == tokens.length) {
+                finishReason = FinishReason.LENGTH;
+            } else if (session.getLength() >= model.getContextLength()) {
+                finishReason = FinishReason.CONTEXT_FULL;
+            }
+            return new Token(id, index, delta, end - start);
+        }
+
+        // Ends a generation without a token to carry the rest of the text: bytes of a character the
+        // last token left unfinished are flushed (as a replacement character) into the text
+        private void finish(FinishReason reason) {
+            text.append(decoder.flush());
+            finishReason = reason;
+        }
+
+        // Index in text where the earliest stop string that overlaps the newest added chars begins, or -1
+        private int findStop(int added) {
+            int found = -1;
+            for (String stop : stopTexts) {
+                int from = Math.max(0, text.length() - added - stop.length() + 1);
+                int at = text.indexOf(stop, from);
+                if (at >= 0 && (found < 0 || at < found)) {
+                    found = at;
+                }
+            }
+            return found;
+        }
+    }
+
+    // Reactive-streams style subscription: request(n) schedules a drain on the executor when demand
+    // goes up from zero, and the drain stops as soon as demand is used up, one decode step ahead.
+    private static final class TokenSubscription implements Flow.Subscription {
+        private final Generation generation;
+        private final Flow.Subscriber<? super Token> subscriber;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        TokenSubscription(Generation generation, Flow.Subscriber<? super Token> subscriber, Executor executor) {
+            this.generation = generation;
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                if (terminated.compareAndSet(false, true)) {
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " tokens; demand must be positive."));
+                }
+                return;
+            }
+            long previous = demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            if (previous == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            generation.cancel();
+            terminated.set(true);
+        }
+
+        private void drain() {
+            try {
+                while (!terminated.get()) {
+                    if (!generation.hasNext()) {
+                        if (terminated.compareAndSet(false, true)) {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    subscriber.onNext(generation.next());
+                    // Run the next step while this token's demand is still held (so no second drain can
+                    // start): a generation that ends there, e.g. on a stop token, completes even if the
+                    // subscriber requests nothing more, and a token it produces waits for new demand
+                    if (!terminated.get() && !generation.hasNext()) {
+                        if (terminated.compareAndSet(false, true)) {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    if (demand.decrementAndGet() == 0) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (terminated.compareAndSet(false, true)) {
+                    subscriber.onError(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Streams gpt2_weights.json with Gson's JsonReader, writing every number straight into
+// the matching layer buffer as it is parsed. Unlike WeightsLoader.loadWeights nothing is
+// boxed or kept per tensor, so peak heap stays at the model size.
+// Same fallbacks as WeightsLoader.toDoubleArray: wrong sizes or null arrays are replaced by
+// random values (per row when only a row is wrong), invalid entries by a random value.
+public class JsonWeightsLoader implements WeightSource {
+    private final String filePath;
+
+    public JsonWeightsLoader(String filePath) {
+        this.filePath = filePath;
+    }
+
+    @Override
+    public void readInto(Map<String, Tensor> parameters) throws IOException {
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                Tensor target = parameters.get(name);
+                if (target == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                read(reader, target);
+                seen.add(name);
+            }
+            reader.endObject();
+        }
+        for (Map.Entry<String, Tensor> parameter : parameters.entrySet()) {
+            if (!seen.contains(parameter.getKey())) {
+                System.err.println("Warning: Encountered invalid or null object. Filling with random values.");
+                WeightsLoader.fillRandom(parameter.getValue());
+            }
+        }
+    }
+
+    // Reads one (possibly nested) array into target, one dimension per nesting level
+    private static void read(JsonReader reader, Tensor target) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            System.err.println("Warning: Encountered invalid or null object. Filling with random values.");
+            WeightsLoader.fillRandom(target);
+            return;
+        }
+        int expected = target.size(0);
+        boolean vector = target.rank() == 1;
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count >= expected) {
+                reader.skipValue();
+            } else if (vector) {
+                int index = target.offset() + count * target.stride(0);
+                if (reader.peek() == JsonToken.NUMBER) {
+                    target.setFlat(index, reader.nextDouble());
+                } else {
+                    // Replace invalid entries with random values
+                    reader.skipValue();
+                    target.setFlat(index, WeightsLoader.randomDouble());
+                }
+            } else {
+                read(reader, target.select(0, count));
+            }
+            count++;
+        }
+        reader.endArray();
+
+        if (count != expected) {
+            if (vector) {
+                System.err.println("Warning: Unexpected array size. Expected " + expected + ", but got " + count + ". Filling with random values.");
+            } else {
+                System.err.println("Warning: Unexpected number of rows. Expected " + expected + ", but got " + count + ". Filling with random values.");
+            }
+            WeightsLoader.fillRandom(target);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+public class KVCache {
+    private final Matrix[] keys;   // per layer, Shape: (contextLength, dOut)
+    private final Matrix[] values; // per layer, Shape: (contextLength, dOut)
+    private final int contextLength;
+    private int length;
+
+    public KVCache(int numLayers, int contextLength, int dOut) {
+        this(numLayers, contextLength, dOut, Precision.FLOAT64);
+    }
+
+    public KVCache(int numLayers, int contextLength, int dOut, Precision precision) {
+        this.contextLength = contextLength;
+        this.keys = new Matrix[numLayers];
+        this.values = new Matrix[numLayers];
+        for (int i = 0; i < numLayers; i++) {
+            this.keys[i] = new Matrix(contextLength, dOut, precision);
+            this.values[i] = new Matrix(contextLength, dOut, precision);
+        }
+    }
+
+    public Matrix getKeys(int layer) {
+        return keys[layer];
+    }
+
+    public Matrix getValues(int layer) {
+        return values[layer];
+    }
+
+    // Number of positions already stored in the cache
+    public int getLength() {
+        return length;
+    }
+
+    public int getContextLength() {
+        return contextLength;
+    }
+
+    // Marks seqLength more positions as filled once every layer has written them
+    public void advance(int seqLength) {
+        if (length + seqLength > contextLength) {
+            throw new IllegalArgumentException("Sequence length exceeds model's context length.");
+        }
+        length += seqLength;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+}
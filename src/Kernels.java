@@ -0,0 +1,53 @@
+// Inner loops shared by Gemm, OutputHead, Matrix.softmax, LayerNorm and GELU.
+// Arrays are addressed as (array, offset) with unit stride.
+//
+// ACTIVE is VectorKernels when jdk.incubator.vector is available (compile and
+// run with --add-modules jdk.incubator.vector), otherwise ScalarKernels.
+// -Dllm.kernels=scalar forces the scalar path.
+public interface Kernels {
+    Kernels ACTIVE = select();
+
+    // Short description of the implementation, e.g. for startup logs
+    String name();
+
+    // y[i] += alpha * x[i]
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    float dot(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    // Dot product of float activations with int8 weights (see QuantizedMatrix)
+    float dotInt8(float[] x, int xOffset, byte[] q, int qOffset, int length);
+
+    void softmax(double[] x, int xOffset, double[] out, int outOffset, int length);
+
+    void softmax(float[] x, int xOffset, float[] out, int outOffset, int length);
+
+    // out = (x - mean(x)) / sqrt(var(x) + eps) * scale + shift over one row
+    void layerNorm(double[] x, int xOffset, double[] scale, int scaleOffset, double[] shift, int shiftOffset,
+                   double eps, double[] out, int outOffset, int length);
+
+    void layerNorm(float[] x, int xOffset, float[] scale, int scaleOffset, float[] shift, int shiftOffset,
+                   float eps, float[] out, int outOffset, int length);
+
+    // tanh approximation of GELU
+    void gelu(double[] x, int xOffset, double[] out, int outOffset, int length);
+
+    void gelu(float[] x, int xOffset, float[] out, int outOffset, int length);
+
+    static Kernels select() {
+        if (!"scalar".equals(System.getProperty("llm.kernels"))) {
+            try {
+                Kernels vector = (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+                vector.dot(new double[1], 0, new double[1], 0, 1);
+                return vector;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // jdk.incubator.vector is not in the module graph, fall back to scalar loops
+            }
+        }
+        return new ScalarKernels();
+    }
+}
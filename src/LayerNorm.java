@@ -4,11 +4,15 @@ public class LayerNorm {
     private final Matrix shift;
 
     public LayerNorm(int embDim) {
-        this.scale = new Matrix(1, embDim); // Initialize to 1
-        this.shift = new Matrix(1, embDim); // Initialize to 0
+        this(embDim, Precision.FLOAT64);
+    }
+
+    public LayerNorm(int embDim, Precision precision) {
+        this.scale = new Matrix(1, embDim, precision); // Initialize to 1
+        this.shift = new Matrix(1, embDim, precision); // Initialize to 0
         for (int i = 0; i < embDim; i++) {
-            this.scale.getData()[0][i] = 1.0;
-            this.shift.getData()[0][i] = 0.0;
+            this.scale.set(0, i, 1.0);
+            this.shift.set(0, i, 0.0);
         }
     }
     public void setScale(double[] scaleData) {
@@ -18,11 +22,49 @@ public class LayerNorm {
     public void setShift(double[] shiftData) {
         this.shift.setData(new double[][] { shiftData });
     }
+
+    public Matrix getScale() {
+        return scale;
+    }
+
+    public Matrix getShift() {
+        return shift;
+    }
     
+    // Normalizes each row in a single fused pass (see Kernels.layerNorm)
     public Matrix forward(Matrix x) {
-        Matrix mean = x.mean(-1);
-        Matrix variance = x.variance(-1, false);
-        Matrix normX = x.subtract(mean).divide(Matrix.sqrt(variance.add(eps)));
-        return normX.multiply(scale).add(shift);
+        return forward(x, new Matrix(x.getRows(), x.getCols(), scale.precision()));
+    }
+
+    // out must have unit column stride and the parameters' precision; out may be x
+    public Matrix forward(Matrix x, Matrix out) {
+        if (out.getRows() != x.getRows() || out.getCols() != x.getCols()
+                || out.tensor().stride(1) != 1 || out.precision() != scale.precision()) {
+            throw new IllegalArgumentException("LayerNorm destination must match the input shape with unit column stride.");
+        }
+        Profiler.Span span = Profiler.start(Profiler.Op.LAYER_NORM);
+        x = x.to(scale.precision()).contiguous();
+        int rows = x.getRows();
+        int cols = x.getCols();
+        Tensor in = x.tensor();
+        Tensor s = scale.tensor();
+        Tensor b = shift.tensor();
+        Tensor o = out.tensor();
+        for (int i = 0; i < rows; i++) {
+            int row = in.offset() + i * cols;
+            int outRow = o.offset() + i * o.stride(0);
+            if (x.precision() == Precision.FLOAT32) {
+                Kernels.ACTIVE.layerNorm(in.floatData(), row, s.floatData(), s.offset(), b.floatData(), b.offset(),
+                                         (float) eps, o.floatData(), outRow, cols);
+            } else {
+                Kernels.ACTIVE.layerNorm(in.data(), row, s.data(), s.offset(), b.data(), b.offset(),
+                                         eps, o.data(), outRow, cols);
+            }
+        }
+        if (span != null) {
+            // mean, variance, normalize, scale and shift; reads x and the parameters, writes out
+            Profiler.end(span, rows, 8L * rows * cols, (2L * rows * cols + 2L * cols) * Profiler.elementBytes(x.precision()));
+        }
+        return out;
     }
 }
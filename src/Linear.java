@@ -1,16 +1,65 @@
 public class Linear {
-    private final Matrix weight; // Shape: (inFeatures, outFeatures)
-    private final Matrix bias;   // Shape: (1, outFeatures)
+    private Matrix weight;                   // Shape: (inFeatures, outFeatures), null once quantized
+    private QuantizedMatrix quantizedWeight; // Shape: (outFeatures, inFeatures), null unless quantized
+    private final Matrix bias;               // Shape: (1, outFeatures)
+    private Profiler.Op profilerOp = Profiler.Op.LINEAR;
 
     public Linear(int inFeatures, int outFeatures) {
+        this(inFeatures, outFeatures, Precision.FLOAT64);
+    }
+
+    public Linear(int inFeatures, int outFeatures, Precision precision) {
         // Initialize weights with small random values (mean=0, std=0.02)
-        this.weight = Matrix.random(inFeatures, outFeatures, 0.0, 0.02);
+        this.weight = Matrix.random(inFeatures, outFeatures, 0.0, 0.02, precision);
         // Initialize biases to zeros
-        this.bias = new Matrix(1, outFeatures);
+        this.bias = new Matrix(1, outFeatures, precision);
+    }
+
+    // Uses the given matrices as storage without copying, e.g. column views of a fused weight
+    public Linear(Matrix weight, Matrix bias) {
+        if (bias.getRows() != 1 || bias.getCols() != weight.getCols()) {
+            throw new IllegalArgumentException("Bias dimensions do not match.");
+        }
+        this.weight = weight;
+        this.bias = bias;
     }
+
+    public Matrix getWeight() {
+        if (weight == null) {
+            throw new IllegalStateException("Dense weights are not available after quantization.");
+        }
+        return weight;
+    }
+
+    public Matrix getBias() {
+        return bias;
+    }
+
     public void setWeights(double[][] weightData) {
+        if (weight == null) {
+            throw new IllegalStateException("Weights cannot be set after quantization.");
+        }
         this.weight.setData(weightData);
     }
+
+    // Replaces the dense weight with an int8 copy; groupSize of 0 means one scale per output feature
+    public void quantize(int groupSize) {
+        if (weight == null) {
+            return;
+        }
+        this.quantizedWeight = QuantizedMatrix.quantize(Matrix.transpose(weight), groupSize);
+        this.weight = null;
+    }
+
+    // Role this layer is reported under when profiling
+    public Linear setProfilerOp(Profiler.Op op) {
+        this.profilerOp = op;
+        return this;
+    }
+
+    public boolean isQuantized() {
+        return quantizedWeight != null;
+    }
     
     public void setBias(double[] biasData) {
         if (biasData.length != this.bias.getCols()) {
@@ -20,11 +69,31 @@ public class Linear {
     }
     
     public Matrix forward(Matrix input) {
+        int outFeatures = bias.getCols();
+        return forward(input, new Matrix(input.getRows(), outFeatures, input.precision()));
+    }
+
+    // Writes input * weight + bias into out, (batchSize, outFeatures) with unit column stride
+    public Matrix forward(Matrix input, Matrix out) {
         // Input shape: (batchSize, inFeatures)
         // Weight shape: (inFeatures, outFeatures)
         // Output shape: (batchSize, outFeatures)
-        Matrix output = input.matMul(this.weight); // Matrix multiplication
-        output = output.addRowVector(this.bias);   // Add bias to each row
-        return output;
+        Profiler.Span span = Profiler.start(profilerOp);
+        if (quantizedWeight != null) {
+            quantizedWeight.multiplyTransposed(input, out); // int8 weights, dequantized on the fly
+        } else {
+            input.matMul(this.weight, out);                // Matrix multiplication
+        }
+        out.addRowVector(this.bias, out);                  // Add bias to each row in place
+        if (span != null) {
+            int rows = input.getRows();
+            int in = input.getCols();
+            int outFeatures = out.getCols();
+            long weightBytes = quantizedWeight != null ? quantizedWeight.bytes()
+                                                       : (long) in * outFeatures * Profiler.elementBytes(weight.precision());
+            long activationBytes = ((long) rows * (in + outFeatures) + outFeatures) * Profiler.elementBytes(input.precision());
+            Profiler.end(span, rows, Profiler.linearFlops(rows, in, outFeatures), weightBytes + activationBytes);
+        }
+        return out;
     }
 }
@@ -1,18 +1,45 @@
+// 2-D view over a Tensor. Elements live in one flat buffer, so transpose,
+// getSubMatrix and reshape (when contiguous) share storage instead of copying.
+// Matrices returned by operations are freshly allocated, contiguous, and in the
+// precision of the matrix the operation was called on. Overloads taking a Matrix out
+// write into that destination instead (any view of the right shape, including the
+// input itself) and return it; the ...InPlace variants overwrite the receiver.
 public class Matrix {
-    private final double[][] data;
+    private final Tensor tensor;
+    private final double[] data;      // FLOAT64 storage, null otherwise
+    private final float[] floatData;  // FLOAT32 storage, null otherwise
+    private final int offset;
     private final int rows;
     private final int cols;
+    private final int rowStride;
+    private final int colStride;
 
     public Matrix(int rows, int cols) {
-        this.rows = rows;
-        this.cols = cols;
-        this.data = new double[rows][cols];
+        this(new Tensor(rows, cols));
     }
 
+    public Matrix(int rows, int cols, Precision precision) {
+        this(new Tensor(precision, rows, cols));
+    }
+
+    // Copies the given rows into flat storage
     public Matrix(double[][] data) {
-        this.rows = data.length;
-        this.cols = data[0].length;
-        this.data = data;
+        this(data.length, data[0].length);
+        setData(data);
+    }
+
+    public Matrix(Tensor tensor) {
+        if (tensor.rank() != 2) {
+            throw new IllegalArgumentException("Matrix requires a rank-2 tensor.");
+        }
+        this.tensor = tensor;
+        this.data = tensor.data();
+        this.floatData = tensor.floatData();
+        this.offset = tensor.offset();
+        this.rows = tensor.size(0);
+        this.cols = tensor.size(1);
+        this.rowStride = tensor.stride(0);
+        this.colStride = tensor.stride(1);
     }
 
     public int getRows() {
@@ -23,156 +50,190 @@ public class Matrix {
         return cols;
     }
 
+    public Tensor tensor() {
+        return tensor;
+    }
+
+    public Precision precision() {
+        return tensor.precision();
+    }
+
+    // Returns this matrix if it already has the given precision, otherwise a converted copy
+    public Matrix to(Precision precision) {
+        return precision() == precision ? this : new Matrix(tensor.copy(precision));
+    }
+
+    private double at(int index) {
+        return floatData != null ? floatData[index] : data[index];
+    }
+
+    private void put(int index, double value) {
+        if (floatData != null) {
+            floatData[index] = (float) value;
+        } else {
+            data[index] = value;
+        }
+    }
+
+    // Returns a copy of the elements; writes to the returned array do not affect the matrix
     public double[][] getData() {
-        return data;
+        double[][] result = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            result[i] = getRow(i);
+        }
+        return result;
+    }
+
+    public double get(int row, int col) {
+        return at(offset + row * rowStride + col * colStride);
+    }
+
+    public void set(int row, int col, double value) {
+        put(offset + row * rowStride + col * colStride, value);
     }
 
     public static Matrix random(int rows, int cols, double mean, double std) {
-        Matrix result = new Matrix(rows, cols);
+        return random(rows, cols, mean, std, Precision.FLOAT64);
+    }
+
+    public static Matrix random(int rows, int cols, double mean, double std, Precision precision) {
+        Matrix result = new Matrix(rows, cols, precision);
         java.util.Random rand = new java.util.Random();
-        for (int i = 0; i < rows; i++) {
-            double[] rowData = result.data[i];
-            for (int j = 0; j < cols; j++) {
-                rowData[j] = mean + std * rand.nextGaussian();
-            }
+        for (int i = 0; i < rows * cols; i++) {
+            result.put(i, mean + std * rand.nextGaussian());
         }
         return result;
     }
 
-    // Subtracts another matrix with broadcasting support
-    public Matrix subtract(Matrix other) {
+    // Returns other as a view with this matrix's shape, using a zero stride along
+    // the broadcast dimension (full matrix, column vector or row vector)
+    private Matrix broadcast(Matrix other, String operation) {
         if (this.rows == other.rows && this.cols == other.cols) {
-            // Element-wise subtraction
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] otherRow = other.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] - otherRow[j];
-                }
-            }
-            return result;
+            return other;
         } else if (other.rows == this.rows && other.cols == 1) {
-            // Subtracting column vector from each row
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double value = other.data[i][0];
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] - value;
-                }
-            }
-            return result;
+            return new Matrix(other.tensor.expand(1, cols));
         } else if (other.rows == 1 && other.cols == this.cols) {
-            // Subtracting row vector from each row
-            Matrix result = new Matrix(this.rows, this.cols);
-            double[] rowValues = other.data[0];
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] - rowValues[j];
-                }
-            }
-            return result;
+            return new Matrix(other.tensor.expand(0, rows));
         } else {
-            throw new IllegalArgumentException("Matrix dimensions are incompatible for subtraction.");
+            throw new IllegalArgumentException("Matrix dimensions are incompatible for " + operation + ".");
         }
     }
 
-    public Matrix subtract(double scalar) {
-        Matrix result = new Matrix(this.rows, this.cols);
+    // Destination for an element-wise result: a fresh matrix, or out after checking its shape
+    private void checkDestination(Matrix out) {
+        if (out.rows != rows || out.cols != cols) {
+            throw new IllegalArgumentException("Destination dimensions do not match matrix dimensions.");
+        }
+    }
+
+    private Matrix newResult() {
+        return new Matrix(rows, cols, precision());
+    }
+
+    // Subtracts another matrix with broadcasting support
+    public Matrix subtract(Matrix other) {
+        return subtract(other, newResult());
+    }
+
+    // Writes this - other into out (which may be this) and returns out
+    public Matrix subtract(Matrix other, Matrix out) {
+        Matrix b = broadcast(other, "subtraction");
+        checkDestination(out);
         for (int i = 0; i < rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
+            int bi = b.offset + i * b.rowStride;
             for (int j = 0; j < cols; j++) {
-                resultRow[j] = thisRow[j] - scalar;
+                out.put(o + j * out.colStride, at(a + j * colStride) - b.at(bi + j * b.colStride));
             }
         }
-        return result;
+        return out;
+    }
+
+    public Matrix subtractInPlace(Matrix other) {
+        return subtract(other, this);
+    }
+
+    public Matrix subtract(double scalar) {
+        return add(-scalar);
+    }
+
+    public Matrix subtract(double scalar, Matrix out) {
+        return add(-scalar, out);
     }
 
     // Adds another matrix with broadcasting support
     public Matrix add(Matrix other) {
-        if (this.rows == other.rows && this.cols == other.cols) {
-            // Element-wise addition
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] otherRow = other.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] + otherRow[j];
-                }
-            }
-            return result;
-        } else if (other.rows == this.rows && other.cols == 1) {
-            // Adding column vector to each row
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double value = other.data[i][0];
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] + value;
-                }
-            }
-            return result;
-        } else if (other.rows == 1 && other.cols == this.cols) {
-            // Adding row vector to each row
-            Matrix result = new Matrix(this.rows, this.cols);
-            double[] rowValues = other.data[0];
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] + rowValues[j];
-                }
+        return add(other, newResult());
+    }
+
+    // Writes this + other into out (which may be this) and returns out
+    public Matrix add(Matrix other, Matrix out) {
+        Matrix b = broadcast(other, "addition");
+        checkDestination(out);
+        for (int i = 0; i < rows; i++) {
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
+            int bi = b.offset + i * b.rowStride;
+            for (int j = 0; j < cols; j++) {
+                out.put(o + j * out.colStride, at(a + j * colStride) + b.at(bi + j * b.colStride));
             }
-            return result;
-        } else {
-            throw new IllegalArgumentException("Matrix dimensions are incompatible for addition.");
         }
+        return out;
+    }
+
+    public Matrix addInPlace(Matrix other) {
+        return add(other, this);
     }
 
     public Matrix add(double scalar) {
-        Matrix result = new Matrix(this.rows, this.cols);
+        return add(scalar, newResult());
+    }
+
+    public Matrix add(double scalar, Matrix out) {
+        checkDestination(out);
         for (int i = 0; i < rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
             for (int j = 0; j < cols; j++) {
-                resultRow[j] = thisRow[j] + scalar;
+                out.put(o + j * out.colStride, at(a + j * colStride) + scalar);
             }
         }
-        return result;
+        return out;
+    }
+
+    public Matrix addInPlace(double scalar) {
+        return add(scalar, this);
     }
 
     // Element-wise square root
     public static Matrix sqrt(Matrix m) {
-        Matrix result = new Matrix(m.rows, m.cols);
+        return sqrt(m, m.newResult());
+    }
+
+    public static Matrix sqrt(Matrix m, Matrix out) {
+        m.checkDestination(out);
         for (int i = 0; i < m.rows; i++) {
-            double[] mRow = m.data[i];
-            double[] resultRow = result.data[i];
+            int a = m.offset + i * m.rowStride;
+            int o = out.offset + i * out.rowStride;
             for (int j = 0; j < m.cols; j++) {
-                resultRow[j] = Math.sqrt(mRow[j]);
+                out.put(o + j * out.colStride, Math.sqrt(m.at(a + j * m.colStride)));
             }
         }
-        return result;
+        return out;
     }
 
     // Mean along a dimension (-1 for row-wise mean)
     public Matrix mean(int axis) {
         if (axis == -1) { // Row-wise mean
-            Matrix result = new Matrix(this.rows, 1);
+            Matrix result = new Matrix(this.rows, 1, precision());
             for (int i = 0; i < rows; i++) {
                 double sum = 0.0;
-                double[] thisRow = this.data[i];
+                int a = offset + i * rowStride;
                 for (int j = 0; j < cols; j++) {
-                    sum += thisRow[j];
+                    sum += at(a + j * colStride);
                 }
-                result.data[i][0] = sum / cols;
+                result.put(i, sum / cols);
             }
             return result;
         }
@@ -183,16 +244,16 @@ public class Matrix {
     public Matrix variance(int axis, boolean unbiased) {
         if (axis == -1) { // Row-wise variance
             Matrix mean = this.mean(-1);
-            Matrix result = new Matrix(this.rows, 1);
+            Matrix result = new Matrix(this.rows, 1, precision());
             for (int i = 0; i < rows; i++) {
                 double sum = 0.0;
-                double meanValue = mean.data[i][0];
-                double[] thisRow = this.data[i];
+                double meanValue = mean.at(i);
+                int a = offset + i * rowStride;
                 for (int j = 0; j < cols; j++) {
-                    double diff = thisRow[j] - meanValue;
+                    double diff = at(a + j * colStride) - meanValue;
                     sum += diff * diff;
                 }
-                result.data[i][0] = sum / (unbiased ? (cols - 1) : cols);
+                result.put(i, sum / (unbiased ? (cols - 1) : cols));
             }
             return result;
         }
@@ -201,251 +262,293 @@ public class Matrix {
 
     // Divides by another matrix with broadcasting support
     public Matrix divide(Matrix other) {
-        if (this.rows == other.rows && this.cols == other.cols) {
-            // Element-wise division
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] otherRow = other.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] / otherRow[j];
-                }
-            }
-            return result;
-        } else if (other.rows == this.rows && other.cols == 1) {
-            // Dividing by column vector
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double value = other.data[i][0];
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] / value;
-                }
-            }
-            return result;
-        } else if (other.rows == 1 && other.cols == this.cols) {
-            // Dividing by row vector
-            Matrix result = new Matrix(this.rows, this.cols);
-            double[] rowValues = other.data[0];
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] / rowValues[j];
-                }
-            }
-            return result;
-        } else {
-            throw new IllegalArgumentException("Matrix dimensions are incompatible for division.");
-        }
+        return divide(other, newResult());
     }
 
-    public Matrix divide(double scalar) {
-        Matrix result = new Matrix(this.rows, this.cols);
-        double invScalar = 1.0 / scalar;
+    // Writes this / other into out (which may be this) and returns out
+    public Matrix divide(Matrix other, Matrix out) {
+        Matrix b = broadcast(other, "division");
+        checkDestination(out);
         for (int i = 0; i < rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
+            int bi = b.offset + i * b.rowStride;
             for (int j = 0; j < cols; j++) {
-                resultRow[j] = thisRow[j] * invScalar;
+                out.put(o + j * out.colStride, at(a + j * colStride) / b.at(bi + j * b.colStride));
             }
         }
-        return result;
+        return out;
+    }
+
+    public Matrix divideInPlace(Matrix other) {
+        return divide(other, this);
+    }
+
+    public Matrix divide(double scalar) {
+        return multiply(1.0 / scalar);
+    }
+
+    public Matrix divide(double scalar, Matrix out) {
+        return multiply(1.0 / scalar, out);
+    }
+
+    public Matrix divideInPlace(double scalar) {
+        return multiply(1.0 / scalar, this);
     }
 
     // Element-wise multiplication with broadcasting support
     public Matrix multiply(Matrix other) {
-        if (this.rows == other.rows && this.cols == other.cols) {
-            // Element-wise multiplication
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] otherRow = other.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < cols; j++) {
-                    resultRow[j] = thisRow[j] * otherRow[j];
-                }
-            }
-            return result;
-        } else if (other.rows == this.rows && other.cols == 1) {
-            // Multiply by column vector
-            Matrix result = new Matrix(this.rows, this.cols);
-            for (int i = 0; i < this.rows; i++) {
-                double value = other.data[i][0];
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] * value;
-                }
-            }
-            return result;
-        } else if (other.rows == 1 && other.cols == this.cols) {
-            // Multiply by row vector
-            Matrix result = new Matrix(this.rows, this.cols);
-            double[] rowValues = other.data[0];
-            for (int i = 0; i < this.rows; i++) {
-                double[] thisRow = this.data[i];
-                double[] resultRow = result.data[i];
-                for (int j = 0; j < this.cols; j++) {
-                    resultRow[j] = thisRow[j] * rowValues[j];
-                }
+        return multiply(other, newResult());
+    }
+
+    // Writes this * other into out (which may be this) and returns out
+    public Matrix multiply(Matrix other, Matrix out) {
+        Matrix b = broadcast(other, "multiplication");
+        checkDestination(out);
+        for (int i = 0; i < rows; i++) {
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
+            int bi = b.offset + i * b.rowStride;
+            for (int j = 0; j < cols; j++) {
+                out.put(o + j * out.colStride, at(a + j * colStride) * b.at(bi + j * b.colStride));
             }
-            return result;
-        } else {
-            throw new IllegalArgumentException("Matrix dimensions are incompatible for multiplication.");
         }
+        return out;
+    }
+
+    public Matrix multiplyInPlace(Matrix other) {
+        return multiply(other, this);
     }
 
     public Matrix multiply(double scalar) {
-        Matrix result = new Matrix(this.rows, this.cols);
+        return multiply(scalar, newResult());
+    }
+
+    public Matrix multiply(double scalar, Matrix out) {
+        checkDestination(out);
         for (int i = 0; i < rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
             for (int j = 0; j < cols; j++) {
-                resultRow[j] = thisRow[j] * scalar;
+                out.put(o + j * out.colStride, at(a + j * colStride) * scalar);
             }
         }
-        return result;
+        return out;
     }
 
+    public Matrix multiplyInPlace(double scalar) {
+        return multiply(scalar, this);
+    }
+
+    // Blocked, multi-threaded multiply (see Gemm)
     public Matrix matMul(Matrix other) {
+        return matMul(other, new Matrix(this.rows, other.cols, precision()));
+    }
+
+    // Writes this * other into out, overwriting it. out needs unit column stride
+    // (a contiguous matrix or a column slice of one) and must not overlap the inputs.
+    public Matrix matMul(Matrix other, Matrix out) {
         if (this.cols != other.rows) {
             throw new IllegalArgumentException("Matrix dimensions are not compatible for multiplication.");
         }
-        Matrix result = new Matrix(this.rows, other.cols);
-        double[][] otherData = other.data;
-        for (int i = 0; i < this.rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
-            for (int k = 0; k < this.cols; k++) {
-                double elemA = thisRow[k];
-                double[] otherRow = otherData[k];
-                for (int j = 0; j < other.cols; j++) {
-                    resultRow[j] += elemA * otherRow[j];
-                }
-            }
+        if (out.rows != this.rows || out.cols != other.cols) {
+            throw new IllegalArgumentException("Destination dimensions do not match matrix dimensions.");
         }
-        return result;
+        Matrix a = this.to(out.precision());
+        a = a.colStride == 1 ? a : a.contiguous();
+        out.fill(0.0);
+        Gemm.multiply(a.tensor(), other.to(out.precision()).tensor(), out.tensor());
+        return out;
     }
 
     public Matrix addRowVector(Matrix rowVector) {
+        return addRowVector(rowVector, newResult());
+    }
+
+    public Matrix addRowVector(Matrix rowVector, Matrix out) {
         if (rowVector.rows != 1 || rowVector.cols != this.cols) {
             throw new IllegalArgumentException("Row vector dimensions must match matrix columns.");
         }
-        return this.add(rowVector); 
+        return this.add(rowVector, out);
     }
 
     public Matrix pow(double exponent) {
-        Matrix result = new Matrix(this.rows, this.cols);
-        for (int i = 0; i < this.rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
-            for (int j = 0; j < this.cols; j++) {
-                resultRow[j] = Math.pow(thisRow[j], exponent);
+        return pow(exponent, newResult());
+    }
+
+    public Matrix pow(double exponent, Matrix out) {
+        checkDestination(out);
+        for (int i = 0; i < rows; i++) {
+            int a = offset + i * rowStride;
+            int o = out.offset + i * out.rowStride;
+            for (int j = 0; j < cols; j++) {
+                out.put(o + j * out.colStride, Math.pow(at(a + j * colStride), exponent));
+            }
+        }
+        return out;
+    }
+
+    public void fill(double value) {
+        for (int i = 0; i < rows; i++) {
+            int a = offset + i * rowStride;
+            if (colStride == 1 && data != null) {
+                java.util.Arrays.fill(data, a, a + cols, value);
+            } else if (colStride == 1) {
+                java.util.Arrays.fill(floatData, a, a + cols, (float) value);
+            } else {
+                for (int j = 0; j < cols; j++) {
+                    put(a + j * colStride, value);
+                }
             }
         }
-        return result;
     }
 
     public Matrix applyFunction(java.util.function.Function<Double, Double> func) {
-        Matrix result = new Matrix(this.rows, this.cols);
-        for (int i = 0; i < this.rows; i++) {
-            double[] thisRow = this.data[i];
-            double[] resultRow = result.data[i];
-            for (int j = 0; j < this.cols; j++) {
-                resultRow[j] = func.apply(thisRow[j]);
+        Matrix result = new Matrix(rows, cols, precision());
+        for (int i = 0; i < rows; i++) {
+            int a = offset + i * rowStride;
+            int o = i * cols;
+            for (int j = 0; j < cols; j++) {
+                result.put(o + j, func.apply(at(a + j * colStride)));
             }
         }
         return result;
     }
 
+    // Zero-copy when this matrix is contiguous
     public Matrix reshape(int newRows, int newCols) {
         if (newRows * newCols != this.rows * this.cols) {
             throw new IllegalArgumentException("Total elements must remain the same during reshape.");
         }
-        Matrix result = new Matrix(newRows, newCols);
-        int index = 0;
-        for (int i = 0; i < this.rows; i++) {
-            double[] thisRow = this.data[i];
-            for (int j = 0; j < this.cols; j++) {
-                int newRow = index / newCols;
-                int newCol = index % newCols;
-                result.data[newRow][newCol] = thisRow[j];
-                index++;
-            }
-        }
-        return result;
+        return new Matrix(tensor.reshape(newRows, newCols));
     }
 
+    // Zero-copy: swaps the strides of m
     public static Matrix transpose(Matrix m) {
-        Matrix result = new Matrix(m.cols, m.rows);
-        for (int i = 0; i < m.rows; i++) {
-            double[] mRow = m.data[i];
-            for (int j = 0; j < m.cols; j++) {
-                result.data[j][i] = mRow[j];
-            }
-        }
-        return result;
+        return new Matrix(m.tensor.transpose(0, 1));
+    }
+
+    public boolean isContiguous() {
+        return tensor.isContiguous();
+    }
+
+    public Matrix contiguous() {
+        return isContiguous() ? this : new Matrix(tensor.copy());
+    }
+
+    // Contiguous copy that shares no storage with this matrix
+    public Matrix copy() {
+        return new Matrix(tensor.copy());
     }
 
     public static Matrix applyMask(Matrix m, Matrix mask) {
+        return applyMask(m, mask, m.newResult());
+    }
+
+    // Masked positions (mask != 0) become -1e9; out may be m
+    public static Matrix applyMask(Matrix m, Matrix mask, Matrix out) {
         if (m.rows != mask.rows || m.cols != mask.cols) {
             throw new IllegalArgumentException("Mask dimensions must match matrix dimensions.");
         }
-        Matrix result = new Matrix(m.rows, m.cols);
+        m.checkDestination(out);
         for (int i = 0; i < m.rows; i++) {
-            double[] mRow = m.data[i];
-            double[] maskRow = mask.data[i];
-            double[] resultRow = result.data[i];
+            int a = m.offset + i * m.rowStride;
+            int k = mask.offset + i * mask.rowStride;
+            int o = out.offset + i * out.rowStride;
             for (int j = 0; j < m.cols; j++) {
-                resultRow[j] = maskRow[j] == 0 ? mRow[j] : -1e9;
+                out.put(o + j * out.colStride, mask.at(k + j * mask.colStride) == 0 ? m.at(a + j * m.colStride) : -1e9);
             }
         }
-        return result;
+        return out;
     }
 
-    // Softmax function
+    // Row-wise softmax function
     public static Matrix softmax(Matrix m) {
-        Matrix result = new Matrix(m.rows, m.cols);
+        return softmax(m, m.newResult());
+    }
+
+    // out needs unit column stride and m's precision; out may be m
+    public static Matrix softmax(Matrix m, Matrix out) {
+        m.checkDestination(out);
+        if (out.colStride != 1 || out.precision() != m.precision()) {
+            throw new IllegalArgumentException("Softmax destination must have unit column stride and the same precision.");
+        }
+        m = m.colStride == 1 ? m : m.contiguous();
         for (int i = 0; i < m.rows; i++) {
-            double[] mRow = m.data[i];
-            double[] resultRow = result.data[i];
-            double max = Double.NEGATIVE_INFINITY;
-            for (double v : mRow) {
-                max = Math.max(max, v);
-            }
-            double sum = 0.0;
-            for (int j = 0; j < m.cols; j++) {
-                resultRow[j] = Math.exp(mRow[j] - max);
-                sum += resultRow[j];
-            }
-            for (int j = 0; j < m.cols; j++) {
-                resultRow[j] /= sum;
+            int a = m.offset + i * m.rowStride;
+            int o = out.offset + i * out.rowStride;
+            if (m.floatData != null) {
+                Kernels.ACTIVE.softmax(m.floatData, a, out.floatData, o, m.cols);
+            } else {
+                Kernels.ACTIVE.softmax(m.data, a, out.data, o, m.cols);
             }
         }
-        return result;
+        return out;
     }
 
+    // Returns a copy of one row
     public double[] getRow(int rowIndex) {
         if (rowIndex < 0 || rowIndex >= this.rows) {
             throw new IllegalArgumentException("Row index out of bounds.");
         }
-        return data[rowIndex];
+        double[] row = new double[cols];
+        int a = offset + rowIndex * rowStride;
+        if (colStride == 1 && data != null) {
+            System.arraycopy(data, a, row, 0, cols);
+        } else {
+            for (int j = 0; j < cols; j++) {
+                row[j] = at(a + j * colStride);
+            }
+        }
+        return row;
+    }
+
+    // New matrix made of the given rows, in order
+    public Matrix gatherRows(int[] rowIndices) {
+        return gatherRows(rowIndices, new Matrix(rowIndices.length, cols, precision()));
+    }
+
+    // Copies the given rows, in order, into out (rowIndices.length, cols)
+    public Matrix gatherRows(int[] rowIndices, Matrix out) {
+        if (out.rows != rowIndices.length || out.cols != cols) {
+            throw new IllegalArgumentException("Destination dimensions do not match the gathered rows.");
+        }
+        for (int i = 0; i < rowIndices.length; i++) {
+            if (rowIndices[i] < 0 || rowIndices[i] >= rows) {
+                throw new IllegalArgumentException("Row index out of bounds.");
+            }
+            out.copyRows(i, this, rowIndices[i], 1);
+        }
+        return out;
+    }
+
+    // Copies count rows of src, from srcRow on, into this matrix from row on, converting precision
+    // if needed. Unlike copyFrom on two getSubMatrix views, this creates no view objects.
+    public void copyRows(int row, Matrix src, int srcRow, int count) {
+        if (src.cols != cols || row < 0 || srcRow < 0 || count < 0 || row + count > rows || srcRow + count > src.rows) {
+            throw new IllegalArgumentException("Invalid row range for copy.");
+        }
+        for (int i = 0; i < count; i++) {
+            int to = offset + (row + i) * rowStride;
+            int from = src.offset + (srcRow + i) * src.rowStride;
+            if (colStride == 1 && src.colStride == 1 && data != null && src.data != null) {
+                System.arraycopy(src.data, from, data, to, cols);
+            } else if (colStride == 1 && src.colStride == 1 && floatData != null && src.floatData != null) {
+                System.arraycopy(src.floatData, from, floatData, to, cols);
+            } else {
+                for (int j = 0; j < cols; j++) {
+                    put(to + j * colStride, src.at(from + j * src.colStride));
+                }
+            }
+        }
     }
 
+    // Zero-copy view of rows [rowStart, rowEnd) and columns [colStart, colEnd)
     public Matrix getSubMatrix(int rowStart, int rowEnd, int colStart, int colEnd) {
-        int newRows = rowEnd - rowStart;
-        int newCols = colEnd - colStart;
         if (rowStart < 0 || rowEnd > this.rows || colStart < 0 || colEnd > this.cols) {
             throw new IllegalArgumentException("Invalid submatrix indices.");
         }
-        Matrix result = new Matrix(newRows, newCols);
-        for (int i = 0; i < newRows; i++) {
-            System.arraycopy(this.data[rowStart + i], colStart, result.data[i], 0, newCols);
-        }
-        return result;
+        return new Matrix(tensor.slice(0, rowStart, rowEnd).slice(1, colStart, colEnd));
     }
 
     public void setData(double[][] newData) {
@@ -453,21 +556,39 @@ public class Matrix {
             throw new IllegalArgumentException("Data dimensions do not match matrix dimensions.");
         }
         for (int i = 0; i < this.rows; i++) {
-            System.arraycopy(newData[i], 0, this.data[i], 0, this.cols);
+            tensor.select(0, i).copyFrom(Tensor.wrap(newData[i], cols));
         }
     }
 
-    // Applies random dropout with given rate
+    // Copies the elements of other into this matrix (or view)
+    public void copyFrom(Matrix other) {
+        if (other.rows != this.rows || other.cols != this.cols) {
+            throw new IllegalArgumentException("Data dimensions do not match matrix dimensions.");
+        }
+        tensor.copyFrom(other.tensor);
+    }
+
+    // Inverted dropout: zeroes each element with probability rate and scales the survivors by
+    // 1 / (1 - rate), so the expected value is unchanged and inference needs no rescaling
     public static Matrix dropout(Matrix m, double rate) {
-        Matrix result = new Matrix(m.rows, m.cols);
-        java.util.Random random = new java.util.Random();
+        return dropout(m, rate, m.newResult());
+    }
+
+    public static Matrix dropout(Matrix m, double rate, Matrix out) {
+        if (!(rate >= 0.0 && rate < 1.0)) {
+            throw new IllegalArgumentException("Dropout rate must be in [0, 1).");
+        }
+        m.checkDestination(out);
+        java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+        double keepScale = 1.0 / (1.0 - rate);
         for (int i = 0; i < m.rows; i++) {
-            double[] mRow = m.data[i];
-            double[] resultRow = result.data[i];
+            int a = m.offset + i * m.rowStride;
+            int o = out.offset + i * out.rowStride;
             for (int j = 0; j < m.cols; j++) {
-                resultRow[j] = random.nextDouble() > rate ? mRow[j] : 0.0;
+                double value = m.at(a + j * m.colStride);
+                out.put(o + j * out.colStride, rate == 0.0 ? value : random.nextDouble() >= rate ? value * keepScale : 0.0);
             }
         }
-        return result;
+        return out;
     }
 }
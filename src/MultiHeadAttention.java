@@ -1,3 +1,6 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
 public class MultiHeadAttention {
     private final int dOut;
     private final int numHeads;
@@ -7,138 +10,165 @@ public class MultiHeadAttention {
     public final Linear WValue;
 
     public final Linear outProj;
-    private final Matrix mask;
+    // Fused c_attn storage, (dIn, 3 * dOut) and (1, 3 * dOut); WQuery/WKey/WValue hold column views. Null once quantized.
+    private Matrix cAttnWeight;
+    private final Matrix cAttnBias;
     private final double dropoutRate;
+    private boolean training; // dropout only applies in training mode
+    private ExecutorService executor = ForkJoinPool.commonPool(); // runs the attention heads
 
     public MultiHeadAttention(int dIn, int dOut, int contextLength, double dropout, int numHeads) {
+        this(dIn, dOut, contextLength, dropout, numHeads, Precision.FLOAT64);
+    }
+
+    public MultiHeadAttention(int dIn, int dOut, int contextLength, double dropout, int numHeads, Precision precision) {
         if (dOut % numHeads != 0) {
             throw new IllegalArgumentException("dOut must be divisible by numHeads.");
         }
+        if (!(dropout >= 0.0 && dropout < 1.0)) {
+            throw new IllegalArgumentException("Dropout rate must be in [0, 1).");
+        }
         this.dOut = dOut;
         this.numHeads = numHeads;
         this.headDim = dOut / numHeads;
         this.dropoutRate = dropout;
 
         // Initialize weights
-        this.WQuery = new Linear(dIn, dOut);
-        this.WKey = new Linear(dIn, dOut);
-        this.WValue = new Linear(dIn, dOut);
-        this.outProj = new Linear(dOut, dOut);
-
-        //  causal mask
-        this.mask = new Matrix(contextLength, contextLength);
-        for (int i = 0; i < contextLength; i++) {
-            for (int j = i + 1; j < contextLength; j++) {
-                this.mask.getData()[i][j] = 1; // 1 means masked
-            }
-        }
+        this.cAttnWeight = Matrix.random(dIn, 3 * dOut, 0.0, 0.02, precision);
+        this.cAttnBias = new Matrix(1, 3 * dOut, precision);
+        this.WQuery = new Linear(cAttnWeight.getSubMatrix(0, dIn, 0, dOut), cAttnBias.getSubMatrix(0, 1, 0, dOut));
+        this.WKey = new Linear(cAttnWeight.getSubMatrix(0, dIn, dOut, 2 * dOut), cAttnBias.getSubMatrix(0, 1, dOut, 2 * dOut));
+        this.WValue = new Linear(cAttnWeight.getSubMatrix(0, dIn, 2 * dOut, 3 * dOut), cAttnBias.getSubMatrix(0, 1, 2 * dOut, 3 * dOut));
+        this.outProj = new Linear(dOut, dOut, precision);
+        WQuery.setProfilerOp(Profiler.Op.QKV_PROJECTION);
+        WKey.setProfilerOp(Profiler.Op.QKV_PROJECTION);
+        WValue.setProfilerOp(Profiler.Op.QKV_PROJECTION);
+        outProj.setProfilerOp(Profiler.Op.ATTENTION_PROJECTION);
     }
 
     public void loadCattnWeights(double[][] cAttnWeight, double[] cAttnBias) {
-        int hiddenSize = cAttnWeight[0].length / 3;
-    
-        // split weights
-        double[][] qWeight = new double[cAttnWeight.length][hiddenSize];
-        double[][] kWeight = new double[cAttnWeight.length][hiddenSize];
-        double[][] vWeight = new double[cAttnWeight.length][hiddenSize];
-    
-        for (int i = 0; i < cAttnWeight.length; i++) {
-            System.arraycopy(cAttnWeight[i], 0, qWeight[i], 0, hiddenSize);
-            System.arraycopy(cAttnWeight[i], hiddenSize, kWeight[i], 0, hiddenSize);
-            System.arraycopy(cAttnWeight[i], 2 * hiddenSize, vWeight[i], 0, hiddenSize);
-        }
-    
+        // Q, K and V are column views of the fused storage, so one copy splits them
+        getCattnWeight().setData(cAttnWeight);
+        this.cAttnBias.setData(new double[][] { cAttnBias });
+    }
 
-        this.WQuery.setWeights(qWeight);
-        this.WKey.setWeights(kWeight);
-        this.WValue.setWeights(vWeight);
-    
-        // split biases
-        double[] qBias = new double[hiddenSize];
-        double[] kBias = new double[hiddenSize];
-        double[] vBias = new double[hiddenSize];
-    
-        System.arraycopy(cAttnBias, 0, qBias, 0, hiddenSize);
-        System.arraycopy(cAttnBias, hiddenSize, kBias, 0, hiddenSize);
-        System.arraycopy(cAttnBias, 2 * hiddenSize, vBias, 0, hiddenSize);
-    
+    // Fused (dIn, 3 * dOut) query/key/value weight in the GPT-2 c_attn layout
+    public Matrix getCattnWeight() {
+        if (cAttnWeight == null) {
+            throw new IllegalStateException("Dense weights are not available after quantization.");
+        }
+        return cAttnWeight;
+    }
 
-        this.WQuery.setBias(qBias);
-        this.WKey.setBias(kBias);
-        this.WValue.setBias(vBias);
+    public Matrix getCattnBias() {
+        return cAttnBias;
     }
+
     public void loadOutProjWeights(double[][] outProjWeights, double[] outProjBias) {
         this.outProj.setWeights(outProjWeights);
         this.outProj.setBias(outProjBias);
     }
     
 
-    public Matrix forward(Matrix x) {
-        int seqLength = x.getRows();
-    
+    // Executor for the per-head attention tasks, e.g. a dedicated pool sized for prefill
+    public void setExecutor(ExecutorService executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null.");
+        }
+        this.executor = executor;
+    }
 
-        Matrix Q = WQuery.forward(x); 
-        Matrix K = WKey.forward(x);   
-        Matrix V = WValue.forward(x); 
-    
+    // Training mode applies attention dropout; evaluation mode (the default) skips it entirely
+    public void setTraining(boolean training) {
+        this.training = training;
+    }
 
-        Matrix[] Q_heads = splitHeads(Q);
-        Matrix[] K_heads = splitHeads(K);
-        Matrix[] V_heads = splitHeads(V);
-    
-        // For each head
-        Matrix[] attentionOutputs = new Matrix[numHeads];
-        for (int i = 0; i < numHeads; i++) {
+    public boolean isTraining() {
+        return training;
+    }
 
-            Matrix scores = Q_heads[i].matMul(Matrix.transpose(K_heads[i])); // (seqLength, seqLength)
-            scores = scores.divide(Math.sqrt(headDim));
+    public void quantize(int groupSize) {
+        WQuery.quantize(groupSize);
+        WKey.quantize(groupSize);
+        WValue.quantize(groupSize);
+        outProj.quantize(groupSize);
+        this.cAttnWeight = null; // Q, K and V now hold their own int8 copies
+    }
 
-            Matrix adjustedMask = mask.getSubMatrix(0, seqLength, 0, seqLength);
-            scores = Matrix.applyMask(scores, adjustedMask);
-    
-            // softmax
-            Matrix weights = Matrix.softmax(scores);
-    
-            // dropout
-            weights = Matrix.dropout(weights, this.dropoutRate);
-    
-  
-            attentionOutputs[i] = weights.matMul(V_heads[i]); 
-        }
-    
+    public Matrix forward(Matrix x) {
+        return forward(x, new int[] { 0, x.getRows() }, null, null, null);
+    }
 
-        Matrix concatAttention = concatHeads(attentionOutputs);
-    
+    // Incremental forward: x holds only the new positions, keys/values of the
+    // earlier pastLength positions are read from the cache and the new ones appended
+    public Matrix forward(Matrix x, Matrix keyCache, Matrix valueCache, int pastLength) {
+        return forward(x, new int[] { 0, x.getRows() }, new Matrix[] { keyCache }, new Matrix[] { valueCache },
+                       new int[] { pastLength });
+    }
 
-        Matrix output = this.outProj.forward(concatAttention);
+    // Ragged batch: rows [starts[s], starts[s + 1]) of x are the new positions of sequence s.
+    // The projections run once over all rows; attention stays within each sequence.
+    // With caches, sequence s continues after its pastLengths[s] cached positions and appends
+    // its keys/values; with null caches every sequence starts at position 0.
+    public Matrix forward(Matrix x, int[] starts, Matrix[] keyCaches, Matrix[] valueCaches, int[] pastLengths) {
+        int rows = x.getRows();
+        Precision precision = x.precision();
+        return forward(x, starts, keyCaches, valueCaches, pastLengths, new Matrix(rows, dOut, precision),
+                       new Matrix(rows, dOut, precision), new Matrix(rows, dOut, precision),
+                       new Matrix(rows, dOut, precision), new Matrix(rows, dOut, precision), new CausalAttention.Batch());
+    }
 
-        return output; 
+    // Same, with Q/K/V, the head outputs and the result written into the workspace buffers
+    // (sized for x's rows) instead of new matrices. Returns workspace.attention().
+    public Matrix forward(Matrix x, int[] starts, Matrix[] keyCaches, Matrix[] valueCaches, int[] pastLengths,
+                          Workspace workspace) {
+        return forward(x, starts, keyCaches, valueCaches, pastLengths, workspace.query(), workspace.key(),
+                       workspace.value(), workspace.context(), workspace.attention(), workspace.attentionBatch());
     }
-    
-    private Matrix[] splitHeads(Matrix x) {
-        // Split x into numHeads 
-        Matrix[] heads = new Matrix[numHeads];
-        for (int i = 0; i < numHeads; i++) {
-            double[][] headData = new double[x.getRows()][headDim];
-            for (int j = 0; j < x.getRows(); j++) {
-                System.arraycopy(x.getData()[j], i * headDim, headData[j], 0, headDim);
+
+    private Matrix forward(Matrix x, int[] starts, Matrix[] keyCaches, Matrix[] valueCaches, int[] pastLengths,
+                           Matrix Q, Matrix K, Matrix V, Matrix concatAttention, Matrix output, CausalAttention.Batch batch) {
+        int numSequences = starts.length - 1;
+        if (starts[0] != 0 || starts[numSequences] != x.getRows()) {
+            throw new IllegalArgumentException("Sequence offsets must cover every row of the batch.");
+        }
+        WQuery.forward(x, Q);
+        WKey.forward(x, K);
+        WValue.forward(x, V);
+
+        // Fused per-head causal attention (see CausalAttention): heads write straight into
+        // their columns of the concatenated output, no score matrix or mask is built
+        batch.reset(numHeads, training ? dropoutRate : 0.0);
+        for (int s = 0; s < numSequences; s++) {
+            int start = starts[s];
+            int end = starts[s + 1];
+            if (keyCaches == null) {
+                batch.add(Q, K.getSubMatrix(start, end, 0, dOut), V.getSubMatrix(start, end, 0, dOut), concatAttention,
+                          start, end, 0);
+            } else {
+                keyCaches[s].copyRows(pastLengths[s], K, start, end - start);
+                valueCaches[s].copyRows(pastLengths[s], V, start, end - start);
+                // Query i reads only keys up to position pastLength + i, so the whole cache serves as keys
+                batch.add(Q, keyCaches[s], valueCaches[s], concatAttention, start, end, pastLengths[s]);
             }
-            heads[i] = new Matrix(headData);
         }
-        return heads;
-    }
-
-    private Matrix concatHeads(Matrix[] heads) {
-       
-        int seqLength = heads[0].getRows();
-        double[][] concatData = new double[seqLength][dOut];
-        for (int i = 0; i < seqLength; i++) {
-            int offset = 0;
-            for (Matrix head : heads) {
-                System.arraycopy(head.getData()[i], 0, concatData[i], offset, headDim);
-                offset += headDim;
+        Profiler.Span span = Profiler.start(Profiler.Op.ATTENTION);
+        batch.run(executor);
+        if (span != null) {
+            // Query i of a sequence scores past + i + 1 keys: QK^T and the weighted sum of V are
+            // 4 * dOut FLOPs per (query, key) pair, plus about five per head for the softmax
+            long pairs = 0;
+            long rowsRead = 0;
+            for (int s = 0; s < numSequences; s++) {
+                long seq = starts[s + 1] - starts[s];
+                long past = keyCaches == null ? 0 : pastLengths[s];
+                pairs += seq * past + seq * (seq + 1) / 2;
+                rowsRead += 2 * seq + 2 * (past + seq);
             }
+            Profiler.end(span, x.getRows(), pairs * (4L * dOut + 5L * numHeads),
+                         rowsRead * dOut * Profiler.elementBytes(Q.precision()));
         }
-        return new Matrix(concatData);
+
+        return this.outProj.forward(concatAttention, output);
     }
 }
@@ -0,0 +1,99 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Projects hidden states onto the vocabulary using the tied token embedding.
+// Scores are dot products against the rows of wte, so the (embDim, vocabSize)
+// transpose is never materialized.
+public class OutputHead {
+    private static final int SLICE_SIZE = 2048; // vocabulary rows scored per parallel task
+    // Scoring state, one per thread and reused by every call, so decode steps allocate no tasks
+    private static final ThreadLocal<ScoreJob> JOB = ThreadLocal.withInitial(ScoreJob::new);
+
+    private final Matrix embedding;                   // Shape: (vocabSize, embDim), shared with GPTModel
+    private final QuantizedMatrix quantizedEmbedding; // int8 alternative to embedding
+
+    public OutputHead(Matrix embedding) {
+        this.embedding = embedding;
+        this.quantizedEmbedding = null;
+    }
+
+    public OutputHead(QuantizedMatrix quantizedEmbedding) {
+        this.embedding = null;
+        this.quantizedEmbedding = quantizedEmbedding;
+    }
+
+    // Logits for every position. Shape: (seqLength, vocabSize)
+    public Matrix forward(Matrix x) {
+        int vocabSize = quantizedEmbedding != null ? quantizedEmbedding.getRows() : embedding.getRows();
+        return forward(x, new Matrix(x.getRows(), vocabSize, quantizedEmbedding != null ? x.precision() : embedding.precision()));
+    }
+
+    // Same, writing the logits into out (seqLength, vocabSize)
+    public Matrix forward(Matrix x, Matrix logits) {
+        int vocabSize = quantizedEmbedding != null ? quantizedEmbedding.getRows() : embedding.getRows();
+        if (logits.getRows() != x.getRows() || logits.getCols() != vocabSize) {
+            throw new IllegalArgumentException("Logits must have one row per position and one column per token.");
+        }
+        Profiler.Span span = Profiler.start(Profiler.Op.LM_HEAD);
+        if (quantizedEmbedding != null) {
+            quantizedEmbedding.multiplyTransposed(x, logits);
+        } else {
+            score(x, logits.tensor());
+        }
+        if (span != null) {
+            int rows = x.getRows();
+            int dim = x.getCols();
+            long weightBytes = quantizedEmbedding != null ? quantizedEmbedding.bytes()
+                                                          : (long) vocabSize * dim * Profiler.elementBytes(embedding.precision());
+            long activationBytes = (long) rows * (dim + vocabSize) * Profiler.elementBytes(logits.precision());
+            Profiler.end(span, rows, 2L * rows * dim * vocabSize, weightBytes + activationBytes);
+        }
+        return logits;
+    }
+
+    // Writes x[i] . wte[v] into out[i][v]. Each wte row is loaded once and scored against
+    // every position while it is still in cache, so a batch reads the embedding once.
+    private void score(Matrix x, Tensor out) {
+        if (x.getCols() != embedding.getCols()) {
+            throw new IllegalArgumentException("Hidden size does not match embedding dimension.");
+        }
+        ScoreJob job = JOB.get();
+        if (job.out != null) {
+            job = new ScoreJob(); // scoring nested in another on this thread, see ParallelSlices
+        }
+        job.wte = embedding.contiguous().tensor();
+        job.hidden = x.to(job.wte.precision()).contiguous().tensor();
+        job.out = out;
+        try {
+            int numSlices = (job.wte.size(0) + SLICE_SIZE - 1) / SLICE_SIZE;
+            ParallelSlices.run(ForkJoinPool.commonPool(), job, numSlices);
+        } finally {
+            job.wte = null;
+            job.hidden = null;
+            job.out = null;
+        }
+    }
+
+    // One scoring pass, a slice per SLICE_SIZE vocabulary rows. Kept per calling thread and refilled by every call.
+    private static final class ScoreJob implements ParallelSlices.Job {
+        private Tensor wte;
+        private Tensor hidden;
+        private Tensor out;
+
+        @Override
+        public void slice(int slice) {
+            int rows = hidden.size(0);
+            int dim = hidden.size(1);
+            int end = Math.min(wte.size(0), (slice + 1) * SLICE_SIZE);
+            for (int v = slice * SLICE_SIZE; v < end; v++) {
+                int w = wte.offset() + v * dim;
+                for (int i = 0; i < rows; i++) {
+                    int h = hidden.offset() + i * dim;
+                    double sum = wte.precision() == Precision.FLOAT32
+                        ? Kernels.ACTIVE.dot(hidden.floatData(), h, wte.floatData(), w, dim)
+                        : Kernels.ACTIVE.dot(hidden.data(), h, wte.data(), w, dim);
+                    out.setFlat(out.offset() + i * out.stride(0) + v * out.stride(1), sum);
+                }
+            }
+        }
+    }
+}
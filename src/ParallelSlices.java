@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs the independent slices of a job on a fork/join pool without allocating. The job is a
+// reusable object (not a capturing lambda) whose fields the caller sets before run(); the leaf
+// tasks are kept per calling thread and reinitialized on every call. The calling thread runs
+// slice 0 itself and then waits for the rest. A run() nested inside another on the same thread
+// (a joining worker can pick up a task that calls back in) runs its slices serially.
+final class ParallelSlices {
+    interface Job {
+        void slice(int index);
+    }
+
+    private static final ThreadLocal<ParallelSlices> LOCAL = ThreadLocal.withInitial(ParallelSlices::new);
+
+    private SliceTask[] tasks = new SliceTask[0];
+    private boolean running;
+
+    private ParallelSlices() {
+    }
+
+    static void run(ForkJoinPool pool, Job job, int count) {
+        LOCAL.get().runSlices(pool, job, count);
+    }
+
+    private void runSlices(ForkJoinPool pool, Job job, int count) {
+        if (count <= 1 || running || pool.getParallelism() <= 1) {
+            for (int i = 0; i < count; i++) {
+                job.slice(i);
+            }
+            return;
+        }
+        if (tasks.length < count) {
+            SliceTask[] grown = Arrays.copyOf(tasks, count);
+            for (int i = tasks.length; i < count; i++) {
+                grown[i] = new SliceTask();
+            }
+            tasks = grown;
+        }
+        running = true;
+        int submitted = 1;
+        Throwable failure = null;
+        try {
+            for (; submitted < count; submitted++) {
+                SliceTask task = tasks[submitted];
+                task.reinitialize();
+                task.job = job;
+                task.index = submitted;
+                pool.execute(task);
+            }
+            job.slice(0);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            // Wait for every submitted slice even after a failure, so none still writes once run() returns
+            for (int i = 1; i < submitted; i++) {
+                tasks[i].quietlyJoin();
+                if (failure == null) {
+                    failure = tasks[i].getException();
+                }
+                tasks[i].job = null;
+            }
+            running = false;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Parallel slice failed.", failure);
+        }
+    }
+
+    private static final class SliceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private transient Job job;
+        private int index;
+
+        @Override
+        protected void compute() {
+            job.slice(index);
+        }
+    }
+}
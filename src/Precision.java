@@ -0,0 +1,6 @@
+// Storage type for weights and activations. FLOAT64 is the reference mode;
+// FLOAT32 halves the memory and bandwidth of every weight and activation.
+public enum Precision {
+    FLOAT64,
+    FLOAT32
+}
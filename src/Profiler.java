@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Optional per-op, per-layer instrumentation of the forward pass. Each instrumented op brackets its
+// work with start() and end(), reporting the rows it processed and the FLOPs and bytes it touched.
+// The profiler accumulates wall time, calls, FLOPs and bytes per (op, layer), emits one JFR event
+// per op (simplellm.Op, recorded when a JFR recording enables it), and prints a roofline-style
+// report of achieved GFLOP/s and GB/s. Disabled (the default, or -Dsimplellm.profile=true to enable
+// at startup), start() is one volatile read and end() returns at once, so nothing is allocated.
+public final class Profiler {
+    public enum Op {
+        FORWARD(true), BLOCK(true), // totals of a model forward pass and of one transformer block
+        LAYER_NORM, QKV_PROJECTION, ATTENTION, ATTENTION_PROJECTION, MLP_UP, GELU, MLP_DOWN, LM_HEAD,
+        LINEAR;                     // a Linear without a more specific role
+
+        final boolean total;
+
+        Op() {
+            this(false);
+        }
+
+        Op(boolean total) {
+            this.total = total;
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("simplellm.profile");
+    private static final ThreadLocal<int[]> currentLayer = ThreadLocal.withInitial(() -> new int[] { -1 });
+    private static final Map<Long, Stats> stats = new ConcurrentHashMap<>();
+
+    private Profiler() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        stats.clear();
+    }
+
+    // null while disabled; ops started inside a BLOCK span are attributed to its layer
+    public static Span start(Op op) {
+        if (!enabled) {
+            return null;
+        }
+        return begin(op, currentLayer.get()[0]);
+    }
+
+    // Starts a span for one layer; ops started on this thread until it ends belong to that layer
+    public static Span start(Op op, int layer) {
+        if (!enabled) {
+            return null;
+        }
+        int[] current = currentLayer.get();
+        Span span = begin(op, layer);
+        span.previousLayer = current[0];
+        current[0] = layer;
+        return span;
+    }
+
+    private static Span begin(Op op, int layer) {
+        Span span = new Span();
+        span.kind = op;
+        span.op = op.name();
+        span.layer = layer;
+        span.previousLayer = Integer.MIN_VALUE;
+        span.begin();
+        span.startNanos = System.nanoTime();
+        return span;
+    }
+
+    public static void end(Span span) {
+        end(span, 0, 0, 0);
+    }
+
+    public static void end(Span span, int rows, long flops, long bytes) {
+        if (span == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - span.startNanos;
+        span.end();
+        if (span.previousLayer != Integer.MIN_VALUE) {
+            currentLayer.get()[0] = span.previousLayer;
+        }
+        span.rows = rows;
+        span.flops = flops;
+        span.bytes = bytes;
+        if (span.shouldCommit()) {
+            span.commit();
+        }
+        stats.computeIfAbsent(key(span.kind, span.layer), k -> new Stats()).add(nanos, flops, bytes);
+    }
+
+    // Multiply-adds count as two FLOPs; bytes are the weights and activations read and written once
+    public static long linearFlops(int rows, int in, int out) {
+        return 2L * rows * in * out + (long) rows * out;
+    }
+
+    public static int elementBytes(Precision precision) {
+        return precision == Precision.FLOAT32 ? 4 : 8;
+    }
+
+    private static long key(Op op, int layer) {
+        return ((long) op.ordinal() << 32) | (layer + 1);
+    }
+
+    public static String report() {
+        return report(0, 0);
+    }
+
+    // With the machine's peak GFLOP/s and GB/s, also shows each op's roofline bound (the lower of
+    // peak compute and intensity times bandwidth) and how much of it the op achieved
+    public static String report(double peakGflops, double peakGBps) {
+        Stats[] byOp = new Stats[Op.values().length];
+        Map<Integer, Stats> byLayer = new TreeMap<>();
+        Map<Integer, Stats> blockTimes = new TreeMap<>();
+        stats.forEach((key, s) -> {
+            Op op = Op.values()[(int) (key >>> 32)];
+            int layer = (int) (key & 0xFFFFFFFFL) - 1;
+            if (op == Op.BLOCK) {
+                blockTimes.computeIfAbsent(layer, l -> new Stats()).add(s);
+            } else if (!op.total && layer >= 0) {
+                byLayer.computeIfAbsent(layer, l -> new Stats()).add(s);
+            }
+            if (byOp[op.ordinal()] == null) {
+                byOp[op.ordinal()] = new Stats();
+            }
+            byOp[op.ordinal()].add(s);
+        });
+        Stats forward = byOp[Op.FORWARD.ordinal()];
+        double totalNanos = forward != null ? forward.nanos : 0;
+        StringBuilder report = new StringBuilder();
+        boolean roofline = peakGflops > 0 && peakGBps > 0;
+        report.append(String.format("%-21s %9s %11s %6s %10s %10s %9s %8s %8s", "op", "calls", "time ms", "time%",
+                                    "GFLOP", "GB", "FLOP/B", "GFLOP/s", "GB/s"));
+        report.append(roofline ? String.format(" %9s %6s %s%n", "roof", "%roof", "bound") : "\n");
+        List<Op> ops = new ArrayList<>(List.of(Op.values()));
+        ops.remove(Op.FORWARD);
+        ops.add(Op.FORWARD);
+        for (Op op : ops) {
+            Stats s = byOp[op.ordinal()];
+            if (s == null) {
+                continue;
+            }
+            report.append(row(op.name().toLowerCase(), s, totalNanos, roofline, peakGflops, peakGBps, op.total));
+        }
+        if (!byLayer.isEmpty()) {
+            report.append(String.format("%nper layer (block wall time; FLOPs and bytes of its ops)%n"));
+            byLayer.forEach((layer, s) -> {
+                Stats block = blockTimes.get(layer);
+                Stats layerStats = new Stats();
+                layerStats.add(s);
+                if (block != null) {
+                    layerStats.nanos = block.nanos;
+                    layerStats.calls = block.calls;
+                }
+                report.append(row("layer " + layer, layerStats, totalNanos, roofline, peakGflops, peakGBps, false));
+            });
+        }
+        return report.toString();
+    }
+
+    private static String row(String name, Stats s, double totalNanos, boolean roofline, double peakGflops,
+                              double peakGBps, boolean timeOnly) {
+        double seconds = s.nanos / 1e9;
+        double gflops = s.flops / 1e9;
+        double gb = s.bytes / 1e9;
+        String line = String.format("%-21s %9d %11.2f %6.1f", name, s.calls, s.nanos / 1e6,
+                                    totalNanos > 0 ? 100 * s.nanos / totalNanos : 0.0);
+        if (timeOnly) {
+            return line + "\n";
+        }
+        double intensity = s.bytes == 0 ? 0.0 : (double) s.flops / s.bytes;
+        double achieved = seconds == 0 ? 0.0 : gflops / seconds;
+        line += String.format(" %10.3f %10.3f %9.2f %8.2f %8.2f", gflops, gb, intensity, achieved,
+                              seconds == 0 ? 0.0 : gb / seconds);
+        if (roofline) {
+            double roof = Math.min(peakGflops, intensity * peakGBps);
+            line += String.format(" %9.2f %6.1f %s", roof, roof == 0 ? 0.0 : 100 * achieved / roof,
+                                  intensity * peakGBps < peakGflops ? "memory" : "compute");
+        }
+        return line + "\n";
+    }
+
+    private static final class Stats {
+        long calls;
+        long nanos;
+        long flops;
+        long bytes;
+
+        synchronized void add(long nanos, long flops, long bytes) {
+            this.calls++;
+            this.nanos += nanos;
+            this.flops += flops;
+            this.bytes += bytes;
+        }
+
+        synchronized void add(Stats other) {
+            synchronized (other) {
+                calls += other.calls;
+                nanos += other.nanos;
+                flops += other.flops;
+                bytes += other.bytes;
+            }
+        }
+    }
+
+    @Name("simplellm.Op")
+    @Label("Model Op")
+    @Category("SimpleLLM")
+    @StackTrace(false)
+    public static final class Span extends jdk.jfr.Event {
+        @Label("Op")
+        String op;
+
+        @Label("Layer")
+        int layer;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("FLOPs")
+        long flops;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        private transient Op kind;
+        private transient long startNanos;
+        private transient int previousLayer;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Map;
+
+// Compares int8 weight-only quantized logits against the fp64 reference.
+// Usage: QuantizationReport [gpt2_weights.json]
+// Without a weights file a small model with seeded random weights is used.
+public class QuantizationReport {
+    public static void main(String[] args) throws Exception {
+        int vocabSize, embDim, contextLength, numLayers, numHeads;
+        Map<String, Object> weightsMap;
+        if (args.length > 0) {
+            // GPT-2 small
+            vocabSize = 50257;
+            embDim = 768;
+            contextLength = 1024;
+            numLayers = 12;
+            numHeads = 12;
+            weightsMap = WeightsLoader.loadWeights(args[0]);
+        } else {
+            vocabSize = 2000;
+            embDim = 64;
+            contextLength = 64;
+            numLayers = 4;
+            numHeads = 4;
+            weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 1234);
+        }
+
+        int[] tokenIndices = new int[32];
+        for (int i = 0; i < tokenIndices.length; i++) {
+            tokenIndices[i] = (i * 7919 + 13) % vocabSize;
+        }
+
+        GPTModel reference = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0, Precision.FLOAT64);
+        reference.loadWeights(weightsMap);
+        Matrix expected = reference.forward(tokenIndices);
+        reference = null;
+
+        System.out.println();
+        System.out.println("Int8 weight-only quantization vs fp64 (" + tokenIndices.length + " positions, vocab " + vocabSize + ")");
+        System.out.printf("%-10s %14s %14s %14s %10s %12s%n", "group", "max |diff|", "mean |diff|", "rel. error", "top-1", "weights MB");
+        System.out.printf("%-10s %14s %14s %14s %10s %12.1f%n", "fp64", "-", "-", "-", "-",
+                          weightBytes(vocabSize, embDim, numLayers, -1) / 1e6);
+
+        for (int groupSize : new int[] { 0, 128, 64, 32 }) {
+            GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0, Precision.FLOAT64);
+            model.loadWeights(weightsMap);
+            model.quantize(groupSize);
+            Matrix actual = model.forward(tokenIndices);
+
+            double maxDiff = 0.0;
+            double sumDiff = 0.0;
+            double sumRef = 0.0;
+            int top1 = 0;
+            for (int i = 0; i < expected.getRows(); i++) {
+                double[] e = expected.getRow(i);
+                double[] a = actual.getRow(i);
+                for (int j = 0; j < e.length; j++) {
+                    double diff = Math.abs(e[j] - a[j]);
+                    maxDiff = Math.max(maxDiff, diff);
+                    sumDiff += diff;
+                    sumRef += Math.abs(e[j]);
+                }
+                if (argMax(e) == argMax(a)) {
+                    top1++;
+                }
+            }
+            int count = expected.getRows() * expected.getCols();
+            System.out.printf("%-10s %14.6f %14.6f %13.4f%% %9.1f%% %12.1f%n",
+                              groupSize == 0 ? "per-row" : String.valueOf(groupSize),
+                              maxDiff, sumDiff / count, 100.0 * sumDiff / sumRef,
+                              100.0 * top1 / expected.getRows(),
+                              weightBytes(vocabSize, embDim, numLayers, groupSize) / 1e6);
+        }
+    }
+
+    // Bytes of the Linear weights and the token embedding; groupSize < 0 means fp64
+    private static double weightBytes(int vocabSize, int embDim, int numLayers, int groupSize) {
+        double total = bytes(vocabSize, embDim, groupSize);
+        total += numLayers * (4 * bytes(embDim, embDim, groupSize)          // query, key, value, out projection
+                              + bytes(4 * embDim, embDim, groupSize)        // fc1, stored (out, in)
+                              + bytes(embDim, 4 * embDim, groupSize));      // fc2
+        return total;
+    }
+
+    private static double bytes(int rows, int cols, int groupSize) {
+        if (groupSize < 0) {
+            return 8.0 * rows * cols;
+        }
+        int group = groupSize == 0 ? cols : Math.min(groupSize, cols);
+        return (double) rows * cols + 4.0 * rows * ((cols + group - 1) / group);
+    }
+
+    private static int argMax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
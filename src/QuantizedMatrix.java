@@ -0,0 +1,168 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Weight-only int8 matrix with symmetric per-group scales.
+// Row r, column c is stored as values[r * cols + c] * scales[r * groupsPerRow + c / groupSize].
+// Rows are the output dimension, so every output is a dot product over one contiguous
+// int8 row: Linear weights are stored transposed, the token embedding as is.
+public class QuantizedMatrix {
+    private static final int SLICE_SIZE = 256; // output rows computed per parallel task
+    // Multiply state, one per thread and reused by every multiply
+    private static final ThreadLocal<MultiplyJob> JOB = ThreadLocal.withInitial(MultiplyJob::new);
+
+    private final int rows;
+    private final int cols;
+    private final int groupSize;
+    private final int groupsPerRow;
+    private final byte[] values;
+    private final float[] scales;
+
+    private QuantizedMatrix(int rows, int cols, int groupSize) {
+        this.rows = rows;
+        this.cols = cols;
+        this.groupSize = groupSize;
+        this.groupsPerRow = (cols + groupSize - 1) / groupSize;
+        this.values = new byte[rows * cols];
+        this.scales = new float[rows * groupsPerRow];
+    }
+
+    // groupSize of 0 means one scale per row
+    public static QuantizedMatrix quantize(Matrix m, int groupSize) {
+        int cols = m.getCols();
+        QuantizedMatrix q = new QuantizedMatrix(m.getRows(), cols, groupSize <= 0 ? cols : Math.min(groupSize, cols));
+        for (int r = 0; r < q.rows; r++) {
+            double[] row = m.getRow(r);
+            for (int g = 0; g < q.groupsPerRow; g++) {
+                int start = g * q.groupSize;
+                int end = Math.min(cols, start + q.groupSize);
+                double maxAbs = 0.0;
+                for (int c = start; c < end; c++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(row[c]));
+                }
+                double scale = maxAbs / 127.0;
+                q.scales[r * q.groupsPerRow + g] = (float) scale;
+                for (int c = start; c < end; c++) {
+                    long v = scale == 0.0 ? 0 : Math.round(row[c] / scale);
+                    q.values[r * cols + c] = (byte) Math.max(-127, Math.min(127, v));
+                }
+            }
+        }
+        return q;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    // Resident size of the int8 values plus scales
+    public long bytes() {
+        return values.length + 4L * scales.length;
+    }
+
+    // x * this^T, dequantizing on the fly. x: (seqLength, cols), result: (seqLength, rows) in x's precision.
+    // Output rows are split into slices computed in parallel; each slice reads its weights once for all of x.
+    public Matrix multiplyTransposed(Matrix x) {
+        return multiplyTransposed(x, new Matrix(x.getRows(), rows, x.precision()));
+    }
+
+    // Same as multiplyTransposed(x), writing into out (seqLength, rows)
+    public Matrix multiplyTransposed(Matrix x, Matrix out) {
+        if (x.getCols() != cols) {
+            throw new IllegalArgumentException("Matrix dimensions are not compatible for multiplication.");
+        }
+        if (out.getRows() != x.getRows() || out.getCols() != rows) {
+            throw new IllegalArgumentException("Destination dimensions do not match matrix dimensions.");
+        }
+        MultiplyJob job = JOB.get();
+        if (job.matrix != null) {
+            job = new MultiplyJob(); // a multiply nested in another on this thread, see ParallelSlices
+        }
+        // The activations are converted once into the thread's buffer, row i at i * cols
+        int seqLength = x.getRows();
+        if (job.input.length < seqLength * cols) {
+            job.input = new float[Math.max(seqLength * cols, 2 * job.input.length)];
+        }
+        for (int i = 0; i < seqLength; i++) {
+            for (int c = 0; c < cols; c++) {
+                job.input[i * cols + c] = (float) x.get(i, c);
+            }
+        }
+        job.matrix = this;
+        job.seqLength = seqLength;
+        job.out = out.tensor();
+        try {
+            ParallelSlices.run(ForkJoinPool.commonPool(), job, (rows + SLICE_SIZE - 1) / SLICE_SIZE);
+        } finally {
+            job.matrix = null;
+            job.out = null;
+        }
+        return out;
+    }
+
+    // New matrix made of the given rows, dequantized
+    public Matrix gatherRows(int[] rowIndices, Precision precision) {
+        return gatherRows(rowIndices, new Matrix(rowIndices.length, cols, precision));
+    }
+
+    // Same, dequantizing into out (rowIndices.length, cols)
+    public Matrix gatherRows(int[] rowIndices, Matrix out) {
+        if (out.getRows() != rowIndices.length || out.getCols() != cols) {
+            throw new IllegalArgumentException("Destination dimensions do not match the gathered rows.");
+        }
+        for (int i = 0; i < rowIndices.length; i++) {
+            int r = rowIndices[i];
+            if (r < 0 || r >= rows) {
+                throw new IllegalArgumentException("Row index out of bounds.");
+            }
+            for (int c = 0; c < cols; c++) {
+                out.set(i, c, values[r * cols + c] * scales[r * groupsPerRow + c / groupSize]);
+            }
+        }
+        return out;
+    }
+
+    public Matrix dequantize() {
+        int[] all = IntStream.range(0, rows).toArray();
+        return gatherRows(all, Precision.FLOAT64);
+    }
+
+    private double dotRow(int r, float[] x, int xOffset) {
+        double sum = 0.0;
+        int rowOffset = r * cols;
+        for (int g = 0; g < groupsPerRow; g++) {
+            int start = g * groupSize;
+            int length = Math.min(cols, start + groupSize) - start;
+            sum += scales[r * groupsPerRow + g]
+                   * (double) Kernels.ACTIVE.dotInt8(x, xOffset + start, values, rowOffset + start, length);
+        }
+        return sum;
+    }
+
+    // One multiply, a slice per SLICE_SIZE output rows. Kept per calling thread with its input
+    // buffer and refilled by every call, so decode steps allocate nothing.
+    private static final class MultiplyJob implements ParallelSlices.Job {
+        private float[] input = new float[0];
+        private QuantizedMatrix matrix;
+        private int seqLength;
+        private Tensor out;
+
+        @Override
+        public void slice(int slice) {
+            int cols = matrix.cols;
+            int end = Math.min(matrix.rows, (slice + 1) * SLICE_SIZE);
+            for (int r = slice * SLICE_SIZE; r < end; r++) {
+                for (int i = 0; i < seqLength; i++) {
+                    out.setFlat(out.offset() + i * out.stride(0) + r * out.stride(1), matrix.dotRow(r, input, i * cols));
+                }
+            }
+        }
+    }
+}
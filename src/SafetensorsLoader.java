@@ -0,0 +1,175 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+// Reads HuggingFace .safetensors checkpoints (e.g. gpt2/model.safetensors).
+// Layout: 8-byte little-endian header length, a JSON header mapping each tensor name to
+// its dtype, shape and [begin, end) byte range, then the raw little-endian data.
+// Each tensor is memory-mapped and bulk-copied into the model, so nothing is boxed and
+// the heap only ever holds the model itself.
+public class SafetensorsLoader implements WeightSource {
+    private static final long MAX_HEADER_SIZE = 100L << 20;
+
+    private final Path path;
+
+    public SafetensorsLoader(String filePath) {
+        this.path = Paths.get(filePath);
+    }
+
+    @Override
+    public void readInto(Map<String, Tensor> parameters) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer lengthBytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, lengthBytes, 0);
+            long headerSize = lengthBytes.getLong(0);
+            if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE || 8 + headerSize > channel.size()) {
+                throw new IOException("Not a safetensors file: " + path);
+            }
+            ByteBuffer headerBytes = ByteBuffer.allocate((int) headerSize);
+            readFully(channel, headerBytes, 8);
+            JsonObject header = JsonParser.parseString(new String(headerBytes.array(), StandardCharsets.UTF_8)).getAsJsonObject();
+            long dataStart = 8 + headerSize;
+
+            // Some exports prefix every name with the module name
+            JsonObject entries = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : header.entrySet()) {
+                String name = entry.getKey().startsWith("transformer.") ? entry.getKey().substring("transformer.".length()) : entry.getKey();
+                entries.add(name, entry.getValue());
+            }
+
+            for (Map.Entry<String, Tensor> parameter : parameters.entrySet()) {
+                String name = parameter.getKey();
+                Tensor target = parameter.getValue();
+                JsonElement entry = entries.get(name);
+                if (entry == null) {
+                    System.err.println("Warning: " + name + " not found in " + path.getFileName() + ". Filling with random values.");
+                    WeightsLoader.fillRandom(target);
+                    continue;
+                }
+                JsonObject info = entry.getAsJsonObject();
+                int[] shape = toIntArray(info.getAsJsonArray("shape"));
+                if (!Arrays.equals(shape, target.shape())) {
+                    System.err.println("Warning: Unexpected shape for " + name + ". Expected " + Arrays.toString(target.shape())
+                                       + ", but got " + Arrays.toString(shape) + ". Filling with random values.");
+                    WeightsLoader.fillRandom(target);
+                    continue;
+                }
+                String dtype = info.get("dtype").getAsString();
+                JsonArray offsets = info.getAsJsonArray("data_offsets");
+                long begin = offsets.get(0).getAsLong();
+                long end = offsets.get(1).getAsLong();
+                if (end - begin != (long) target.numel() * elementSize(dtype, name) || dataStart + end > channel.size()) {
+                    throw new IOException("Byte range of " + name + " does not match its shape.");
+                }
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + begin, end - begin)
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+                copy(bytes, dtype, target);
+            }
+        }
+    }
+
+    // Copies the mapped values into target, converting to its precision
+    private static void copy(ByteBuffer bytes, String dtype, Tensor target) {
+        Tensor dst = target.isContiguous() ? target : new Tensor(target.precision(), target.shape());
+        int offset = dst.offset();
+        int n = dst.numel();
+        boolean single = dst.precision() == Precision.FLOAT32;
+        switch (dtype) {
+            case "F32": {
+                FloatBuffer values = bytes.asFloatBuffer();
+                if (single) {
+                    values.get(dst.floatData(), offset, n);
+                } else {
+                    double[] out = dst.data();
+                    for (int i = 0; i < n; i++) {
+                        out[offset + i] = values.get(i);
+                    }
+                }
+                break;
+            }
+            case "F64": {
+                DoubleBuffer values = bytes.asDoubleBuffer();
+                if (single) {
+                    float[] out = dst.floatData();
+                    for (int i = 0; i < n; i++) {
+                        out[offset + i] = (float) values.get(i);
+                    }
+                } else {
+                    values.get(dst.data(), offset, n);
+                }
+                break;
+            }
+            default: {
+                ShortBuffer values = bytes.asShortBuffer();
+                boolean bf16 = dtype.equals("BF16");
+                for (int i = 0; i < n; i++) {
+                    short bits = values.get(i);
+                    dst.setFlat(offset + i, bf16 ? Float.intBitsToFloat(bits << 16) : halfToFloat(bits));
+                }
+                break;
+            }
+        }
+        if (dst != target) {
+            target.copyFrom(dst);
+        }
+    }
+
+    private static int elementSize(String dtype, String name) throws IOException {
+        switch (dtype) {
+            case "F64":
+                return 8;
+            case "F32":
+                return 4;
+            case "F16":
+            case "BF16":
+                return 2;
+            default:
+                throw new IOException("Unsupported dtype " + dtype + " for " + name + ".");
+        }
+    }
+
+    // IEEE 754 half precision to float, including subnormals, infinities and NaN
+    private static float halfToFloat(short bits) {
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    private static int[] toIntArray(JsonArray array) {
+        int[] result = new int[array.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i).getAsInt();
+        }
+        return result;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file: " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.util.SplittableRandom;
+import java.util.function.ToIntFunction;
+
+// Picks the next token from a row of logits. Supports temperature, top-k, top-p (nucleus),
+// repetition and frequency penalties, with its own seeded random generator so a run can be
+// replayed. All scratch buffers are sized to the vocabulary once, so sampling a token does
+// not allocate: top-k is a partial selection (quickselect) over a reused index array and
+// only top-p sorts, and then only the k surviving candidates.
+// A Sampler holds per-sequence state (the RNG and the token counts used by the penalties),
+// so use one instance per generated sequence and do not share it between threads.
+public class Sampler implements ToIntFunction<Matrix> {
+    private final int vocabSize;
+    private final SplittableRandom random;
+    private final double[] scores; // working copy of the logits
+    private final int[] order;     // candidate token ids, best first once sorted
+    private final int[] counts;    // occurrences of each token so far
+    private final int[] seen;      // distinct tokens with a nonzero count, so penalties skip the rest
+    private int numSeen;
+    private int equalEnd; // second result of partition
+
+    private double temperature = 1.0;
+    private int topK;              // 0 keeps every token
+    private double topP = 1.0;
+    private double repetitionPenalty = 1.0;
+    private double frequencyPenalty;
+
+    public Sampler(int vocabSize, long seed) {
+        if (vocabSize < 1) {
+            throw new IllegalArgumentException("Vocabulary size must be positive.");
+        }
+        this.vocabSize = vocabSize;
+        this.random = new SplittableRandom(seed);
+        this.scores = new double[vocabSize];
+        this.order = new int[vocabSize];
+        this.counts = new int[vocabSize];
+        this.seen = new int[vocabSize];
+    }
+
+    // Logits are divided by temperature; 0 means greedy
+    public Sampler setTemperature(double temperature) {
+        if (!(temperature >= 0.0)) {
+            throw new IllegalArgumentException("Temperature must be non-negative.");
+        }
+        this.temperature = temperature;
+        return this;
+    }
+
+    // Keep only the k most likely tokens; 0 disables the cut
+    public Sampler setTopK(int topK) {
+        if (topK < 0) {
+            throw new IllegalArgumentException("topK must be non-negative.");
+        }
+        this.topK = topK;
+        return this;
+    }
+
+    // Keep the smallest set of most likely tokens whose probability reaches topP
+    public Sampler setTopP(double topP) {
+        if (!(topP > 0.0 && topP <= 1.0)) {
+            throw new IllegalArgumentException("topP must be in (0, 1].");
+        }
+        this.topP = topP;
+        return this;
+    }
+
+    // Tokens seen before have positive logits divided and negative logits multiplied by penalty (1 disables)
+    public Sampler setRepetitionPenalty(double penalty) {
+        if (!(penalty > 0.0)) {
+            throw new IllegalArgumentException("Repetition penalty must be positive.");
+        }
+        this.repetitionPenalty = penalty;
+        return this;
+    }
+
+    // penalty * (number of earlier occurrences) is subtracted from a token's logit
+    public Sampler setFrequencyPenalty(double penalty) {
+        this.frequencyPenalty = penalty;
+        return this;
+    }
+
+    // Counts a token for the penalties without sampling it, e.g. the prompt
+    public void observe(int token) {
+        if (token < 0 || token >= vocabSize) {
+            throw new IllegalArgumentException("Token " + token + " is outside the vocabulary.");
+        }
+        if (counts[token]++ == 0) {
+            seen[numSeen++] = token;
+        }
+    }
+
+    public void observe(int[] tokens) {
+        for (int token : tokens) {
+            observe(token);
+        }
+    }
+
+    // Forgets the counted tokens; the random generator keeps its position
+    public void reset() {
+        for (int i = 0; i < numSeen; i++) {
+            counts[seen[i]] = 0;
+        }
+        numSeen = 0;
+    }
+
+    @Override
+    public int applyAsInt(Matrix logits) {
+        return sample(logits);
+    }
+
+    // Samples from the last row of logits (shape (n, vocabSize)) and counts the chosen token
+    public int sample(Matrix logits) {
+        if (logits.getCols() != vocabSize) {
+            throw new IllegalArgumentException("Expected " + vocabSize + " logits, got " + logits.getCols() + ".");
+        }
+        int row = logits.getRows() - 1;
+        for (int j = 0; j < vocabSize; j++) {
+            scores[j] = logits.get(row, j);
+        }
+        applyPenalties();
+
+        int token;
+        if (temperature == 0.0 || topK == 1) {
+            token = argmax();
+        } else {
+            token = draw();
+        }
+        observe(token);
+        return token;
+    }
+
+    private void applyPenalties() {
+        if (repetitionPenalty == 1.0 && frequencyPenalty == 0.0) {
+            return;
+        }
+        for (int i = 0; i < numSeen; i++) {
+            int token = seen[i];
+            double score = scores[token];
+            score = score > 0.0 ? score / repetitionPenalty : score * repetitionPenalty;
+            scores[token] = score - frequencyPenalty * counts[token];
+        }
+    }
+
+    private int argmax() {
+        int best = 0;
+        for (int j = 1; j < vocabSize; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    private int draw() {
+        for (int j = 0; j < vocabSize; j++) {
+            order[j] = j;
+        }
+        int n = topK > 0 ? Math.min(topK, vocabSize) : vocabSize;
+        if (n < vocabSize) {
+            select(0, vocabSize - 1, n);
+        }
+        if (topP < 1.0) {
+            sort(0, n - 1);
+        }
+
+        // Softmax over the candidates, overwriting their scores with unnormalized probabilities
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, scores[order[i]]);
+        }
+        double total = 0.0;
+        for (int i = 0; i < n; i++) {
+            int token = order[i];
+            double p = Math.exp((scores[token] - max) / temperature);
+            scores[token] = p;
+            total += p;
+        }
+        if (topP < 1.0) {
+            // Candidates are sorted, so the nucleus is a prefix
+            double limit = topP * total;
+            double cumulative = 0.0;
+            int m = 0;
+            while (m < n && cumulative < limit) {
+                cumulative += scores[order[m++]];
+            }
+            n = m;
+            total = cumulative;
+        }
+
+        double r = random.nextDouble() * total;
+        double cumulative = 0.0;
+        for (int i = 0; i < n; i++) {
+            cumulative += scores[order[i]];
+            if (r < cumulative) {
+                return order[i];
+            }
+        }
+        return order[n - 1]; // rounding left r just past the last candidate
+    }
+
+    // Quickselect: afterwards order[lo, lo + k) holds the k highest scores, in no particular order
+    private void select(int lo, int hi, int k) {
+        while (lo < hi) {
+            int greater = partition(lo, hi) - lo; // candidates above the pivot
+            int notLess = equalEnd - lo + 1;      // ... plus those equal to it
+            if (k <= greater) {
+                hi = lo + greater - 1;
+            } else if (k <= notLess) {
+                return;
+            } else {
+                k -= notLess;
+                lo = equalEnd + 1;
+            }
+        }
+    }
+
+    // Descending quicksort of order[lo..hi] by score, insertion sort for short runs
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int start = partition(lo, hi);
+            int end = equalEnd;
+            // Recurse into the smaller side to bound the stack depth
+            if (start - lo < hi - end) {
+                sort(lo, start - 1);
+                lo = end + 1;
+            } else {
+                sort(end + 1, hi);
+                hi = start - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int token = order[i];
+            double score = scores[token];
+            int j = i - 1;
+            while (j >= lo && scores[order[j]] < score) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = token;
+        }
+    }
+
+    // Three-way partition around the median of three, so runs of equal scores cost nothing:
+    // afterwards order[lo, start) scores higher than the pivot, order[start, equalEnd] equal
+    // and order(equalEnd, hi] lower. Returns start.
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        double a = scores[order[lo]];
+        double b = scores[order[mid]];
+        double c = scores[order[hi]];
+        double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        int lt = lo;
+        int gt = hi;
+        int i = lo;
+        while (i <= gt) {
+            double score = scores[order[i]];
+            if (score > pivot) {
+                swap(i++, lt++);
+            } else if (score < pivot) {
+                swap(i, gt--);
+            } else {
+                i++;
+            }
+        }
+        equalEnd = gt;
+        return lt;
+    }
+
+    private void swap(int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+    }
+}
@@ -0,0 +1,138 @@
+// Plain loops; the reference implementation and the fallback when the Vector API is unavailable
+public class ScalarKernels implements Kernels {
+    private static final double SQRT_2_OVER_PI = Math.sqrt(2.0 / Math.PI);
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] x, int xOffset, byte[] q, int qOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            sum += x[xOffset + i] * q[qOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmax(double[] x, int xOffset, double[] out, int outOffset, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, x[xOffset + i]);
+        }
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = Math.exp(x[xOffset + i] - max);
+            sum += out[outOffset + i];
+        }
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] /= sum;
+        }
+    }
+
+    @Override
+    public void softmax(float[] x, int xOffset, float[] out, int outOffset, int length) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, x[xOffset + i]);
+        }
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = (float) Math.exp(x[xOffset + i] - max);
+            sum += out[outOffset + i];
+        }
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] /= sum;
+        }
+    }
+
+    @Override
+    public void layerNorm(double[] x, int xOffset, double[] scale, int scaleOffset, double[] shift, int shiftOffset,
+                          double eps, double[] out, int outOffset, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += x[xOffset + i];
+        }
+        double mean = sum / length;
+        double sq = 0.0;
+        for (int i = 0; i < length; i++) {
+            double diff = x[xOffset + i] - mean;
+            sq += diff * diff;
+        }
+        double std = Math.sqrt(sq / length + eps);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = (x[xOffset + i] - mean) / std * scale[scaleOffset + i] + shift[shiftOffset + i];
+        }
+    }
+
+    @Override
+    public void layerNorm(float[] x, int xOffset, float[] scale, int scaleOffset, float[] shift, int shiftOffset,
+                          float eps, float[] out, int outOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            sum += x[xOffset + i];
+        }
+        float mean = sum / length;
+        float sq = 0.0f;
+        for (int i = 0; i < length; i++) {
+            float diff = x[xOffset + i] - mean;
+            sq += diff * diff;
+        }
+        float std = (float) Math.sqrt(sq / length + eps);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = (x[xOffset + i] - mean) / std * scale[scaleOffset + i] + shift[shiftOffset + i];
+        }
+    }
+
+    @Override
+    public void gelu(double[] x, int xOffset, double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double v = x[xOffset + i];
+            double inner = (v + 0.044715 * v * v * v) * SQRT_2_OVER_PI;
+            out[outOffset + i] = 0.5 * v * (1.0 + Math.tanh(inner));
+        }
+    }
+
+    @Override
+    public void gelu(float[] x, int xOffset, float[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            float v = x[xOffset + i];
+            float inner = (float) ((v + 0.044715f * v * v * v) * SQRT_2_OVER_PI);
+            out[outOffset + i] = 0.5f * v * (1.0f + (float) Math.tanh(inner));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.Arrays;
+
+// N-dimensional view over one flat buffer, double[] or float[] depending on precision.
+// Element (i0, i1, ...) lives at data[offset + i0 * strides[0] + i1 * strides[1] + ...].
+// slice, select, transpose and view only create a new header over the same buffer.
+public class Tensor {
+    private final double[] data;      // FLOAT64 storage, null otherwise
+    private final float[] floatData;  // FLOAT32 storage, null otherwise
+    private final int offset;
+    private final int[] shape;
+    private final int[] strides;
+
+    // Zero-filled, contiguous row-major tensor
+    public Tensor(int... shape) {
+        this(Precision.FLOAT64, shape);
+    }
+
+    public Tensor(Precision precision, int... shape) {
+        this(precision == Precision.FLOAT64 ? new double[checkedSize(shape)] : null,
+             precision == Precision.FLOAT32 ? new float[checkedSize(shape)] : null,
+             0, shape.clone(), contiguousStrides(shape));
+    }
+
+    public Tensor(double[] data, int offset, int[] shape, int[] strides) {
+        this(data, null, offset, shape, strides);
+    }
+
+    public Tensor(float[] data, int offset, int[] shape, int[] strides) {
+        this(null, data, offset, shape, strides);
+    }
+
+    private Tensor(double[] data, float[] floatData, int offset, int[] shape, int[] strides) {
+        if (shape.length != strides.length) {
+            throw new IllegalArgumentException("Shape and strides must have the same rank.");
+        }
+        this.data = data;
+        this.floatData = floatData;
+        this.offset = offset;
+        this.shape = shape;
+        this.strides = strides;
+    }
+
+    // Wraps an existing flat buffer as a contiguous tensor without copying
+    public static Tensor wrap(double[] data, int... shape) {
+        if (checkedSize(shape) != data.length) {
+            throw new IllegalArgumentException("Buffer length " + data.length + " does not match shape " + Arrays.toString(shape) + ".");
+        }
+        return new Tensor(data, 0, shape.clone(), contiguousStrides(shape));
+    }
+
+    public static Tensor wrap(float[] data, int... shape) {
+        if (checkedSize(shape) != data.length) {
+            throw new IllegalArgumentException("Buffer length " + data.length + " does not match shape " + Arrays.toString(shape) + ".");
+        }
+        return new Tensor(data, 0, shape.clone(), contiguousStrides(shape));
+    }
+
+    public Precision precision() {
+        return floatData != null ? Precision.FLOAT32 : Precision.FLOAT64;
+    }
+
+    // Backing buffer in FLOAT64 mode, null in FLOAT32 mode
+    public double[] data() {
+        return data;
+    }
+
+    // Backing buffer in FLOAT32 mode, null in FLOAT64 mode
+    public float[] floatData() {
+        return floatData;
+    }
+
+    // Reads the element at a raw index into the backing buffer
+    public double getFlat(int index) {
+        return floatData != null ? floatData[index] : data[index];
+    }
+
+    // Writes the element at a raw index into the backing buffer
+    public void setFlat(int index, double value) {
+        if (floatData != null) {
+            floatData[index] = (float) value;
+        } else {
+            data[index] = value;
+        }
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int rank() {
+        return shape.length;
+    }
+
+    public int size(int dim) {
+        return shape[dim];
+    }
+
+    public int stride(int dim) {
+        return strides[dim];
+    }
+
+    public int[] shape() {
+        return shape.clone();
+    }
+
+    public int numel() {
+        int n = 1;
+        for (int s : shape) {
+            n *= s;
+        }
+        return n;
+    }
+
+    public boolean isContiguous() {
+        int expected = 1;
+        for (int d = shape.length - 1; d >= 0; d--) {
+            if (shape[d] != 1 && strides[d] != expected) {
+                return false;
+            }
+            expected *= shape[d];
+        }
+        return true;
+    }
+
+    public double get(int... index) {
+        return getFlat(indexOf(index));
+    }
+
+    public void set(double value, int... index) {
+        setFlat(indexOf(index), value);
+    }
+
+    // View of positions [start, end) along dim
+    public Tensor slice(int dim, int start, int end) {
+        if (start < 0 || end > shape[dim] || start > end) {
+            throw new IllegalArgumentException("Invalid slice [" + start + ", " + end + ") for dimension of size " + shape[dim] + ".");
+        }
+        int[] newShape = shape.clone();
+        newShape[dim] = end - start;
+        return new Tensor(data, floatData, offset + start * strides[dim], newShape, strides.clone());
+    }
+
+    // View with dim removed, fixed at index
+    public Tensor select(int dim, int index) {
+        if (index < 0 || index >= shape[dim]) {
+            throw new IllegalArgumentException("Index " + index + " out of bounds for dimension of size " + shape[dim] + ".");
+        }
+        int[] newShape = new int[shape.length - 1];
+        int[] newStrides = new int[shape.length - 1];
+        for (int d = 0, k = 0; d < shape.length; d++) {
+            if (d != dim) {
+                newShape[k] = shape[d];
+                newStrides[k] = strides[d];
+                k++;
+            }
+        }
+        return new Tensor(data, floatData, offset + index * strides[dim], newShape, newStrides);
+    }
+
+    // View that repeats a size-1 dimension size times using a zero stride
+    public Tensor expand(int dim, int size) {
+        if (shape[dim] != 1) {
+            throw new IllegalArgumentException("Only dimensions of size 1 can be expanded.");
+        }
+        int[] newShape = shape.clone();
+        int[] newStrides = strides.clone();
+        newShape[dim] = size;
+        newStrides[dim] = 0;
+        return new Tensor(data, floatData, offset, newShape, newStrides);
+    }
+
+    // View with two dimensions swapped
+    public Tensor transpose(int dim0, int dim1) {
+        int[] newShape = shape.clone();
+        int[] newStrides = strides.clone();
+        newShape[dim0] = shape[dim1];
+        newShape[dim1] = shape[dim0];
+        newStrides[dim0] = strides[dim1];
+        newStrides[dim1] = strides[dim0];
+        return new Tensor(data, floatData, offset, newShape, newStrides);
+    }
+
+    // Zero-copy reshape, only valid on contiguous tensors
+    public Tensor view(int... newShape) {
+        if (checkedSize(newShape) != numel()) {
+            throw new IllegalArgumentException("Total elements must remain the same during reshape.");
+        }
+        if (!isContiguous()) {
+            throw new IllegalStateException("view() requires a contiguous tensor; use reshape() instead.");
+        }
+        return new Tensor(data, floatData, offset, newShape.clone(), contiguousStrides(newShape));
+    }
+
+    // Same as view() when possible, otherwise copies into a contiguous buffer first
+    public Tensor reshape(int... newShape) {
+        return contiguous().view(newShape);
+    }
+
+    public Tensor contiguous() {
+        return isContiguous() ? this : copy();
+    }
+
+    public Tensor copy() {
+        return copy(precision());
+    }
+
+    // Contiguous copy converted to the given precision
+    public Tensor copy(Precision precision) {
+        Tensor result = new Tensor(precision, shape);
+        result.copyFrom(this);
+        return result;
+    }
+
+    // Copies src element-wise into this view, converting precision if needed; shapes must match
+    public void copyFrom(Tensor src) {
+        if (!Arrays.equals(shape, src.shape)) {
+            throw new IllegalArgumentException("Cannot copy " + Arrays.toString(src.shape) + " into " + Arrays.toString(shape) + ".");
+        }
+        if (numel() == 0) {
+            return;
+        }
+        copy(src, 0, src.offset, offset);
+    }
+
+    private void copy(Tensor src, int dim, int srcIndex, int dstIndex) {
+        int n = shape[dim];
+        if (dim == shape.length - 1) {
+            if (strides[dim] == 1 && src.strides[dim] == 1 && data != null && src.data != null) {
+                System.arraycopy(src.data, srcIndex, data, dstIndex, n);
+            } else if (strides[dim] == 1 && src.strides[dim] == 1 && floatData != null && src.floatData != null) {
+                System.arraycopy(src.floatData, srcIndex, floatData, dstIndex, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    setFlat(dstIndex + i * strides[dim], src.getFlat(srcIndex + i * src.strides[dim]));
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            copy(src, dim + 1, srcIndex + i * src.strides[dim], dstIndex + i * strides[dim]);
+        }
+    }
+
+    private int indexOf(int[] index) {
+        if (index.length != shape.length) {
+            throw new IllegalArgumentException("Expected " + shape.length + " indices but got " + index.length + ".");
+        }
+        int flat = offset;
+        for (int d = 0; d < index.length; d++) {
+            if (index[d] < 0 || index[d] >= shape[d]) {
+                throw new IllegalArgumentException("Index out of bounds.");
+            }
+            flat += index[d] * strides[d];
+        }
+        return flat;
+    }
+
+    private static int[] contiguousStrides(int[] shape) {
+        int[] strides = new int[shape.length];
+        int stride = 1;
+        for (int d = shape.length - 1; d >= 0; d--) {
+            strides[d] = stride;
+            stride *= shape[d];
+        }
+        return strides;
+    }
+
+    private static int checkedSize(int[] shape) {
+        long n = 1;
+        for (int s : shape) {
+            if (s < 0) {
+                throw new IllegalArgumentException("Negative dimension in shape " + Arrays.toString(shape) + ".");
+            }
+            n *= s;
+        }
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tensor of shape " + Arrays.toString(shape) + " is too large.");
+        }
+        return (int) n;
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestAttention {
+    public static void main(String[] args) {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        int numHeads = 4;
+        int headDim = 16;
+        int width = numHeads * headDim;
+        // Prefill longer than one key block, and a decode step on top of a cache
+        int[][] cases = { { 150, 0 }, { 1, 149 }, { 7, 70 } };
+        for (Precision precision : Precision.values()) {
+            for (int[] c : cases) {
+                int seqLength = c[0];
+                int pastLength = c[1];
+                int total = pastLength + seqLength;
+                Matrix q = Matrix.random(seqLength, width, 0.0, 1.0, precision);
+                Matrix k = Matrix.random(total, width, 0.0, 1.0, precision);
+                Matrix v = Matrix.random(total, width, 0.0, 1.0, precision);
+
+                Matrix actual = new Matrix(seqLength, width, precision);
+                CausalAttention.forward(q, k, v, actual, numHeads, pastLength, 0.0);
+                Matrix expected = reference(q, k, v, numHeads, pastLength);
+
+                // Heads and row chunks on a thread pool write disjoint outputs, so results are identical
+                Matrix parallel = new Matrix(seqLength, width, precision);
+                CausalAttention.forward(q, k, v, parallel, numHeads, pastLength, 0.0, executor);
+
+                double maxDiff = 0.0;
+                for (int i = 0; i < seqLength; i++) {
+                    for (int j = 0; j < width; j++) {
+                        maxDiff = Math.max(maxDiff, Math.abs(actual.get(i, j) - expected.get(i, j)));
+                        if (parallel.get(i, j) != actual.get(i, j)) {
+                            throw new IllegalStateException("Parallel attention differs from the serial result.");
+                        }
+                    }
+                }
+                System.out.println(precision + " seq " + seqLength + " past " + pastLength + ": max diff " + maxDiff);
+                if (maxDiff > (precision == Precision.FLOAT32 ? 1e-5 : 1e-12)) {
+                    throw new IllegalStateException("Fused attention differs from the materialized reference.");
+                }
+            }
+        }
+        executor.shutdown();
+    }
+
+    // softmax(mask(Q K^T / sqrt(d))) V per head, with the full score matrix and mask
+    private static Matrix reference(Matrix q, Matrix k, Matrix v, int numHeads, int pastLength) {
+        int seqLength = q.getRows();
+        int total = k.getRows();
+        int headDim = q.getCols() / numHeads;
+        Matrix mask = new Matrix(seqLength, total);
+        for (int i = 0; i < seqLength; i++) {
+            for (int j = pastLength + i + 1; j < total; j++) {
+                mask.set(i, j, 1);
+            }
+        }
+        Matrix out = new Matrix(seqLength, q.getCols());
+        for (int h = 0; h < numHeads; h++) {
+            int c0 = h * headDim;
+            int c1 = c0 + headDim;
+            Matrix qh = q.getSubMatrix(0, seqLength, c0, c1).to(Precision.FLOAT64);
+            Matrix kh = k.getSubMatrix(0, total, c0, c1).to(Precision.FLOAT64);
+            Matrix vh = v.getSubMatrix(0, total, c0, c1).to(Precision.FLOAT64);
+            Matrix scores = qh.matMul(Matrix.transpose(kh)).divide(Math.sqrt(headDim));
+            Matrix weights = Matrix.softmax(Matrix.applyMask(scores, mask));
+            out.getSubMatrix(0, seqLength, c0, c1).copyFrom(weights.matMul(vh));
+        }
+        return out;
+    }
+}
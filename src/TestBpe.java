@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Checks the integer merge engine against the original string implementation of bpe() on merges
+// trained from a seeded synthetic corpus (the GPT-2 vocabulary is not part of the repository), and
+// times both. The corpus is generated, not read from disk, so the input and the timings do not
+// depend on the working directory or on what else is in the tree.
+public class TestBpe {
+    private static final Pattern PATTERN =
+        Pattern.compile("'s|'t|'re|'ve|'m|'ll|'d| ?\\p{L}+| ?\\p{N}+| ?[^\\s\\p{L}\\p{N}]+|\\s+(?!\\S)|\\s+");
+
+    public static void main(String[] args) {
+        String corpus = corpus(7, 60000);
+        Map<Integer, String> byteEncoder = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> counts = new HashMap<>();
+        Matcher matcher = PATTERN.matcher(corpus);
+        while (matcher.find()) {
+            String token = matcher.group().chars().mapToObj(byteEncoder::get).collect(Collectors.joining());
+            counts.merge(token, 1, Integer::sum);
+        }
+        List<BytePairEncoding.Pair<String, String>> merges = train(counts, 2000);
+        Map<String, Integer> vocab = new HashMap<>();
+        for (String symbol : byteEncoder.values()) {
+            vocab.put(symbol, vocab.size());
+        }
+        for (BytePairEncoding.Pair<String, String> merge : merges) {
+            vocab.putIfAbsent(merge.first + merge.second, vocab.size());
+        }
+        Map<BytePairEncoding.Pair<String, String>, Integer> ranks = new HashMap<>();
+        for (int i = 0; i < merges.size(); i++) {
+            ranks.put(merges.get(i), i);
+        }
+
+        // Identical output on every distinct word of the corpus, plus repeats and unknown characters
+        List<String> words = new ArrayList<>(counts.keySet());
+        Random random = new Random(3);
+        String alphabet = "eeettaa" + byteEncoder.get((int) ' ') + "\u4e2d";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j = 1 + random.nextInt(24); j > 0; j--) {
+                word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            words.add(word.toString());
+        }
+        words.add("");
+        BytePairEncoding.Encoder encoder = new BytePairEncoding.Encoder(vocab, merges, "replace");
+        for (String word : words) {
+            String expected = legacyBpe(word, ranks);
+            String actual = encoder.bpe(word);
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("bpe(\"" + word + "\") = \"" + actual + "\", expected \"" + expected + "\"");
+            }
+        }
+        System.out.println(words.size() + " words match the string implementation (" + merges.size() + " merges)");
+
+        // Throughput on distinct words: merging alone (cache disabled), then with the default cache,
+        // which only pays for its insert since each pass gets a new encoder and no word repeats.
+        // Every figure is 20 passes over the words, and the speedups are medians of 7 rounds
+        List<String> distinct = new ArrayList<>(counts.keySet());
+        int rounds = 7;
+        double[] mergeSpeedups = new double[rounds];
+        double[] cachedSpeedups = new double[rounds];
+        for (int round = 0; round < rounds; round++) {
+            double legacy = throughput(distinct, () -> word -> legacyBpe(word, ranks));
+            double merging = throughput(distinct, () -> new BytePairEncoding.Encoder(vocab, merges, "replace", 0)::bpe);
+            double cached = throughput(distinct, () -> new BytePairEncoding.Encoder(vocab, merges, "replace")::bpe);
+            mergeSpeedups[round] = merging / legacy;
+            cachedSpeedups[round] = cached / legacy;
+            System.out.printf("round %d: string merges %.0f tokens/s, integer merges %.0f tokens/s (%.1fx), "
+                              + "with cache insert %.0f tokens/s (%.1fx)%n",
+                              round, legacy, merging, mergeSpeedups[round], cached, cachedSpeedups[round]);
+        }
+        Arrays.sort(mergeSpeedups);
+        Arrays.sort(cachedSpeedups);
+        System.out.printf("median speedup: %.1fx merging alone, %.1fx with cache insert%n",
+                          mergeSpeedups[rounds / 2], cachedSpeedups[rounds / 2]);
+    }
+
+    // Symbols produced per second over 20 passes, each with a new bpe function made outside the timing
+    private static double throughput(List<String> words, Supplier<Function<String, String>> bpes) {
+        long nanos = 0;
+        long symbols = 0;
+        for (int pass = 0; pass < 20; pass++) {
+            Function<String, String> bpe = bpes.get();
+            long start = System.nanoTime();
+            for (String word : words) {
+                symbols += countSymbols(bpe.apply(word));
+            }
+            nanos += System.nanoTime() - start;
+        }
+        return symbols / (nanos / 1e9);
+    }
+
+    private static int countSymbols(String bpe) {
+        int count = 1;
+        for (int i = 0; i < bpe.length(); i++) {
+            if (bpe.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // English-like text over a seeded lexicon of syllable words with Zipf-distributed frequencies,
+    // with capitals, numbers, punctuation and line breaks
+    private static String corpus(long seed, int numWords) {
+        String[] onsets = { "", "b", "c", "d", "f", "g", "h", "l", "m", "n", "p", "r", "s", "t", "w", "br", "ch", "st", "th", "tr" };
+        String[] vowels = { "a", "e", "i", "o", "u", "ea", "ou", "io" };
+        String[] codas = { "", "", "n", "r", "s", "t", "l", "nd", "ng", "st", "rt", "ck" };
+        String[] suffixes = { "", "", "", "s", "ed", "ing", "er", "ly", "tion" };
+        Random random = new Random(seed);
+        String[] lexicon = new String[4000];
+        for (int w = 0; w < lexicon.length; w++) {
+            StringBuilder word = new StringBuilder();
+            for (int syllables = 1 + random.nextInt(random.nextInt(4) + 1); syllables > 0; syllables--) {
+                word.append(onsets[random.nextInt(onsets.length)]).append(vowels[random.nextInt(vowels.length)])
+                    .append(codas[random.nextInt(codas.length)]);
+            }
+            lexicon[w] = word.append(suffixes[random.nextInt(suffixes.length)]).toString();
+        }
+        double[] cumulative = new double[lexicon.length];
+        double total = 0.0;
+        for (int w = 0; w < lexicon.length; w++) {
+            total += 1.0 / (w + 1);
+            cumulative[w] = total;
+        }
+        StringBuilder text = new StringBuilder();
+        boolean sentenceStart = true;
+        for (int i = 0; i < numWords; i++) {
+            if (random.nextInt(40) == 0) {
+                text.append(' ').append(random.nextInt(random.nextBoolean() ? 100 : 100000));
+                continue;
+            }
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            String word = lexicon[Math.min(index < 0 ? -index - 1 : index, lexicon.length - 1)];
+            if (sentenceStart) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+            text.append(text.length() == 0 || text.charAt(text.length() - 1) == '\n' ? "" : " ").append(word);
+            sentenceStart = random.nextInt(12) == 0;
+            if (sentenceStart) {
+                text.append(random.nextInt(5) == 0 ? "?" : ".");
+                if (random.nextInt(6) == 0) {
+                    text.append('\n');
+                }
+            } else if (random.nextInt(15) == 0) {
+                text.append(',');
+            }
+        }
+        return text.toString();
+    }
+
+    // Plain BPE training: repeatedly merge the most frequent adjacent pair
+    private static List<BytePairEncoding.Pair<String, String>> train(Map<String, Integer> counts, int numMerges) {
+        Map<List<String>, Integer> words = new HashMap<>();
+        counts.forEach((word, count) -> words.merge(Arrays.asList(word.split("")), count, Integer::sum));
+        List<BytePairEncoding.Pair<String, String>> merges = new ArrayList<>();
+        for (int m = 0; m < numMerges; m++) {
+            Map<BytePairEncoding.Pair<String, String>, Integer> pairs = new HashMap<>();
+            for (Map.Entry<List<String>, Integer> word : words.entrySet()) {
+                List<String> symbols = word.getKey();
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    pairs.merge(new BytePairEncoding.Pair<>(symbols.get(i), symbols.get(i + 1)), word.getValue(), Integer::sum);
+                }
+            }
+            BytePairEncoding.Pair<String, String> best = pairs.entrySet().stream()
+                .max(Map.Entry.<BytePairEncoding.Pair<String, String>, Integer>comparingByValue()
+                     .thenComparing(e -> e.getKey().first + " " + e.getKey().second, Comparator.reverseOrder()))
+                .map(Map.Entry::getKey).orElse(null);
+            if (best == null) {
+                break;
+            }
+            merges.add(best);
+            Map<List<String>, Integer> merged = new HashMap<>();
+            for (Map.Entry<List<String>, Integer> word : words.entrySet()) {
+                List<String> symbols = word.getKey();
+                List<String> out = new ArrayList<>(symbols.size());
+                for (int i = 0; i < symbols.size(); i++) {
+                    if (i + 1 < symbols.size() && symbols.get(i).equals(best.first) && symbols.get(i + 1).equals(best.second)) {
+                        out.add(best.first + best.second);
+                        i++;
+                    } else {
+                        out.add(symbols.get(i));
+                    }
+                }
+                merged.merge(out, word.getValue(), Integer::sum);
+            }
+            words.clear();
+            words.putAll(merged);
+        }
+        // Keep the first occurrence of each merge, as a vocab.bpe file would
+        return new ArrayList<>(new LinkedHashSet<>(merges));
+    }
+
+    // The original Encoder.bpe, without its cache
+    private static String legacyBpe(String token, Map<BytePairEncoding.Pair<String, String>, Integer> bpeRanks) {
+        String[] word = token.split("");
+        Set<BytePairEncoding.Pair<String, String>> pairs = BytePairEncoding.getPairs(word);
+
+        if (pairs.isEmpty()) return token;
+
+        while (true) {
+            BytePairEncoding.Pair<String, String> bigram = pairs.stream()
+                    .min(Comparator.comparingInt(p -> bpeRanks.getOrDefault(p, Integer.MAX_VALUE)))
+                    .orElse(null);
+
+            if (bigram == null || !bpeRanks.containsKey(bigram)) break;
+
+            String first = bigram.first, second = bigram.second;
+            List<String> newWord = new ArrayList<>();
+            for (int i = 0; i < word.length; ) {
+                int j = indexOf(word, first, i);
+                if (j == -1) {
+                    newWord.addAll(Arrays.asList(word).subList(i, word.length));
+                    break;
+                }
+                newWord.addAll(Arrays.asList(word).subList(i, j));
+                if (j < word.length - 1 && word[j].equals(first) && word[j + 1].equals(second)) {
+                    newWord.add(first + second);
+                    i = j + 2;
+                } else {
+                    newWord.add(word[j]);
+                    i = j + 1;
+                }
+            }
+            word = newWord.toArray(new String[0]);
+            pairs = BytePairEncoding.getPairs(word);
+        }
+
+        return String.join(" ", word);
+    }
+
+    private static int indexOf(String[] array, String element, int startIndex) {
+        for (int i = startIndex; i < array.length; i++) {
+            if (array[i].equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
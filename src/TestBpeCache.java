@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestBpeCache {
+    public static void main(String[] args) throws Exception {
+        // LRU bound and counters
+        BpeCache cache = new BpeCache(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        check("A".equals(cache.get("a")), "a should be cached");
+        cache.put("d", "D"); // evicts b, the least recently used
+        check(cache.get("b") == null && "A".equals(cache.get("a")) && cache.size() == 3, "b should have been evicted");
+        check(cache.getHits() == 2 && cache.getMisses() == 1 && cache.getEvictions() == 1, "unexpected counters: " + cache);
+
+        BpeCache disabled = new BpeCache(0);
+        disabled.put("a", "A");
+        check(disabled.get("a") == null && disabled.size() == 0, "capacity 0 should not cache");
+
+        // Encoders share one bounded cache across threads and still produce the uncached result
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (String symbol : bytes.values()) {
+            vocab.put(symbol, vocab.size());
+        }
+        List<BytePairEncoding.Pair<String, String>> merges = new ArrayList<>();
+        String[][] pairs = { { "t", "h" }, { "th", "e" }, { "a", "n" }, { "e", "r" }, { "i", "n" }, { "\u0120", "the" } };
+        for (String[] pair : pairs) {
+            merges.add(new BytePairEncoding.Pair<>(pair[0], pair[1]));
+            vocab.putIfAbsent(pair[0] + pair[1], vocab.size());
+        }
+        BytePairEncoding.Encoder reference = new BytePairEncoding.Encoder(vocab, merges, "replace", 0);
+        BytePairEncoding.Encoder bounded = new BytePairEncoding.Encoder(vocab, merges, "replace", 100);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            texts.add("the other thinner banner " + i + " then there " + (i * 7919 % 1000));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            results.add(pool.submit(() -> {
+                for (String text : texts) {
+                    if (!bounded.encode(text).equals(reference.encode(text))) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            check(result.get(), "cached encoding differs from uncached");
+        }
+        pool.shutdown();
+        BpeCache shared = bounded.getCache();
+        System.out.println(shared);
+        check(shared.size() <= 100 && shared.getEvictions() > 0 && shared.getHits() > 0, "cache should be bounded and used");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
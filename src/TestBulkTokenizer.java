@@ -0,0 +1,78 @@
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestBulkTokenizer {
+    public static void main(String[] args) throws Exception {
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            vocab.put(bytes.get(b), b);
+        }
+        List<BytePairEncoding.Pair<String, String>> merges = new ArrayList<>();
+        String[][] pairs = { { "t", "h" }, { "th", "e" }, { "\u0120", "the" }, { "e", "r" }, { "i", "n" }, { "\u0120", "\u0120" },
+                             { "a", "n" }, { "o", "n" }, { "\u010a", "\u010a" } };
+        for (String[] pair : pairs) {
+            merges.add(new BytePairEncoding.Pair<>(pair[0], pair[1]));
+            vocab.putIfAbsent(pair[0] + pair[1], vocab.size());
+        }
+        BytePairEncoding.Encoder encoder = new BytePairEncoding.Encoder(vocab, merges, "replace");
+
+        // Words, numbers, punctuation, contractions, runs of mixed whitespace and non-ASCII text
+        String[] pieces = { "the", "other", "banner", "thin", "on", "1984", "it's", "we'll", "?!", "...", "h\u00e9llo",
+                            "\u4e2d\u6587", "\ud83d\ude00", "(x)", " ", "  ", "\n", "\n\n", "\t", " \n ", "\r\n" };
+        Random random = new Random(21);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 200_000) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+            if (random.nextInt(3) > 0) {
+                text.append(' ');
+            }
+        }
+        text.append("x".repeat(500)); // a run longer than a chunk, so the chunk has to grow
+        text.append(" end");
+        List<Integer> expected = encoder.encode(text.toString());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        File file = File.createTempFile("tokens", ".bin");
+        file.deleteOnExit();
+        for (BulkTokenizer.TokenFormat format : BulkTokenizer.TokenFormat.values()) {
+            BulkTokenizer.Stats stats = new BulkTokenizer(encoder).setExecutor(pool).setChunkChars(256)
+                .tokenize(new StringReader(text.toString()), file.toPath(), format);
+            System.out.println(format + ": " + stats);
+            int[] actual = read(file.toPath(), format);
+            if (actual.length != expected.size()) {
+                throw new IllegalStateException(format + ": " + actual.length + " tokens, expected " + expected.size());
+            }
+            for (int i = 0; i < actual.length; i++) {
+                if (actual[i] != expected.get(i)) {
+                    throw new IllegalStateException(format + ": token " + i + " is " + actual[i] + ", expected " + expected.get(i));
+                }
+            }
+        }
+        pool.shutdown();
+        System.out.println("Chunked parallel tokenization matches encode() on the whole text");
+    }
+
+    private static int[] read(Path path, BulkTokenizer.TokenFormat format) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            int[] ids = new int[(int) (channel.size() / format.bytes)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = format == BulkTokenizer.TokenFormat.UINT16 ? mapped.getShort() & 0xFFFF : mapped.getInt();
+            }
+            return ids;
+        }
+    }
+}
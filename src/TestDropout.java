@@ -0,0 +1,71 @@
+import java.util.concurrent.ForkJoinPool;
+
+public class TestDropout {
+    public static void main(String[] args) {
+        // Inverted dropout: survivors are scaled so the expected value is unchanged
+        Matrix ones = new Matrix(300, 300);
+        ones.fill(1.0);
+        Matrix dropped = Matrix.dropout(ones, 0.3);
+        int zeros = 0;
+        double sum = 0.0;
+        for (int i = 0; i < 300; i++) {
+            for (int j = 0; j < 300; j++) {
+                double value = dropped.get(i, j);
+                check(value == 0.0 || Math.abs(value - 1.0 / 0.7) < 1e-12, "survivors should be scaled by 1 / (1 - rate)");
+                zeros += value == 0.0 ? 1 : 0;
+                sum += value;
+            }
+        }
+        check(Math.abs(zeros / 90000.0 - 0.3) < 0.01, "about 30% should be dropped, got " + zeros / 90000.0);
+        check(Math.abs(sum / 90000.0 - 1.0) < 0.02, "the mean should stay 1, got " + sum / 90000.0);
+        check(maxDiff(Matrix.dropout(ones, 0.0), ones) == 0.0, "rate 0 should copy");
+        try {
+            Matrix.dropout(ones, 1.0);
+            throw new AssertionError("rate 1 should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Attention dropout averages out to the attention without dropout (without the rescaling
+        // the mean would be about half of it)
+        Matrix q = Matrix.random(8, 16, 0.0, 1.0);
+        Matrix k = Matrix.random(8, 16, 0.0, 1.0);
+        Matrix v = Matrix.random(8, 16, 0.0, 1.0);
+        Matrix exact = CausalAttention.forward(q, k, v, new Matrix(8, 16), 2, 0, 0.0);
+        Matrix mean = new Matrix(8, 16);
+        int runs = 10000;
+        for (int r = 0; r < runs; r++) {
+            mean.addInPlace(CausalAttention.forward(q, k, v, new Matrix(8, 16), 2, 0, 0.5, ForkJoinPool.commonPool()));
+        }
+        double bias = maxDiff(mean.multiply(1.0 / runs), exact);
+        check(bias < 0.15, "attention dropout should be unbiased, mean differs by " + bias);
+
+        // Evaluation mode (the default) is deterministic; training mode applies dropout
+        GPTModel model = new GPTModel(100, 32, 16, 2, 4, 0.3);
+        int[] tokens = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        check(!model.isTraining(), "models should start in evaluation mode");
+        Matrix eval = model.forward(tokens);
+        check(maxDiff(eval, model.forward(tokens)) == 0.0, "evaluation mode should skip dropout");
+        model.setTraining(true);
+        check(model.isTraining(), "training mode should propagate");
+        check(maxDiff(model.forward(tokens), model.forward(tokens)) > 0.0, "training mode should apply dropout");
+        model.setTraining(false);
+        check(maxDiff(eval, model.forward(tokens)) == 0.0, "switching back should restore evaluation mode");
+        System.out.printf("Dropout OK (attention mean off by %.4f over %d runs)%n", bias, runs);
+    }
+
+    private static double maxDiff(Matrix a, Matrix b) {
+        double max = 0.0;
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < a.getCols(); j++) {
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+            }
+        }
+        return max;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
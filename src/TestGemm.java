@@ -0,0 +1,62 @@
+public class TestGemm {
+    public static void main(String[] args) {
+        // GPT-2 small shapes: prefill QKV / MLP and a single decode row
+        int[][] shapes = {
+            {64, 768, 768},
+            {64, 768, 3072},
+            {64, 3072, 768},
+            {1, 768, 3072},
+            {37, 50, 29},
+        };
+
+        for (int[] shape : shapes) {
+            int m = shape[0];
+            int k = shape[1];
+            int n = shape[2];
+            for (Precision precision : Precision.values()) {
+                Matrix a = Matrix.random(m, k, 0.0, 1.0, precision);
+                Matrix b = Matrix.random(k, n, 0.0, 1.0, precision);
+
+                long start = System.nanoTime();
+                Matrix actual = a.matMul(b);
+                long elapsedMicros = (System.nanoTime() - start) / 1_000;
+
+                double maxDiff = maxDiff(actual, naive(a, b));
+                // A transposed (strided) right-hand side goes through the packing path
+                Matrix bView = Matrix.transpose(Matrix.transpose(b).contiguous());
+                double maxDiffT = maxDiff(a.matMul(bView), actual);
+
+                double tolerance = precision == Precision.FLOAT32 ? 1e-3 * Math.sqrt(k) : 1e-9;
+                System.out.println(precision + " (" + m + "x" + k + ") * (" + k + "x" + n + "): "
+                    + elapsedMicros + " us, max diff " + Math.max(maxDiff, maxDiffT));
+                if (maxDiff > tolerance || maxDiffT > tolerance) {
+                    throw new IllegalStateException("Gemm result differs from the reference multiply.");
+                }
+            }
+        }
+    }
+
+    private static Matrix naive(Matrix a, Matrix b) {
+        Matrix result = new Matrix(a.getRows(), b.getCols());
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < b.getCols(); j++) {
+                double sum = 0.0;
+                for (int k = 0; k < a.getCols(); k++) {
+                    sum += a.get(i, k) * b.get(k, j);
+                }
+                result.set(i, j, sum);
+            }
+        }
+        return result;
+    }
+
+    private static double maxDiff(Matrix a, Matrix b) {
+        double max = 0.0;
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < a.getCols(); j++) {
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+            }
+        }
+        return max;
+    }
+}
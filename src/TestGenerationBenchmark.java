@@ -0,0 +1,50 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestGenerationBenchmark {
+    public static void main(String[] args) {
+        long[] values = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        check(GenerationBenchmark.percentile(values, 50) == 5, "p50 of 1..10 should be 5");
+        check(GenerationBenchmark.percentile(values, 95) == 10, "p95 of 1..10 should be 10");
+        check(GenerationBenchmark.percentile(new long[] { 7 }, 99) == 7, "a single value is every percentile");
+        check(GenerationBenchmark.percentile(new long[0], 50) == 0, "no values should give 0");
+
+        // Seeded weights make the generated tokens repeatable across models and runs
+        List<String> prompts = Arrays.asList("The capital of France is", "To be or not to be");
+        GenerationBenchmark.Report first = benchmark(prompts);
+        GenerationBenchmark.Report second = benchmark(prompts);
+        System.out.println(first);
+        check(first.outputHash == second.outputHash, "seeded models should generate the same tokens");
+        check(first.samples.size() == 2 * prompts.size(), "one sample per prompt and run");
+        check(first.generatedTokens == 2L * prompts.size() * 6, "every generation should run to the token limit");
+        for (GenerationBenchmark.Sample sample : first.samples) {
+            check(sample.prefillNanos > 0 && sample.decodeNanos.length == 5, "prefill plus five decode steps");
+            check(sample.promptTokens == prompts.get(sample.prompt).length(), "byte-level prompts have one token per byte");
+        }
+        check(first.decodeP50Millis <= first.decodeP95Millis && first.decodeP95Millis <= first.decodeP99Millis,
+              "percentiles should be ordered");
+        check(first.allocatedBytes > 0 && first.tokensPerSecond > 0, "allocation and throughput should be measured");
+
+        JsonObject json = JsonParser.parseString(first.toJson()).getAsJsonObject();
+        check(json.getAsJsonObject("summary").get("decodeP99Millis").getAsDouble() == first.decodeP99Millis, "JSON summary");
+        check(json.getAsJsonArray("samples").size() == first.samples.size(), "JSON samples");
+        String[] csv = first.toCsv().split("\n");
+        check(csv.length == 1 + first.samples.size() && csv[0].startsWith("run,prompt,"), "CSV has a header and one row per sample");
+        System.out.println("Generation benchmark reports are consistent");
+    }
+
+    private static GenerationBenchmark.Report benchmark(List<String> prompts) {
+        GPTModel model = new GPTModel(256, 32, 64, 2, 4, 0.0);
+        GenerationBenchmark.seedWeights(model, 42);
+        return new GenerationBenchmark(model, GenerationBenchmark.byteEncoder(256))
+            .setMaxNewTokens(6).setWarmupRuns(1).setRuns(2).run(prompts);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class TestGenerationEngine {
+    public static void main(String[] args) throws Exception {
+        int vocabSize = 300;
+        int embDim = 32;
+        int contextLength = 40;
+        int numLayers = 2;
+        int numHeads = 4;
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 13);
+        GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        model.loadWeights(weightsMap);
+
+        // Mixed short and long requests; more requests than slots and a small token budget,
+        // so requests queue, prompts are prefilled in chunks and sequences join mid-flight
+        int[][] prompts = {
+            { 5, 17, 42, 8, 99 }, { 7 }, { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13 },
+            { 250, 3 }, { 60, 61, 62, 63, 64, 65, 66 }, { 11, 22, 33 }, { 299 }
+        };
+        int[] maxNewTokens = { 12, 3, 20, 1, 8, 30, 40 };
+
+        List<CompletableFuture<GenerationEngine.Result>> futures = new ArrayList<>();
+        GenerationEngine.Metrics metrics;
+        try (GenerationEngine engine = new GenerationEngine(model, 3, 6)) {
+            for (int r = 0; r < prompts.length; r++) {
+                futures.add(engine.submit(prompts[r], maxNewTokens[r]));
+            }
+            for (CompletableFuture<GenerationEngine.Result> future : futures) {
+                future.get();
+            }
+            metrics = engine.getMetrics();
+        }
+        System.out.println(metrics);
+
+        // Every request must match greedy decoding of that request alone
+        for (int r = 0; r < prompts.length; r++) {
+            int[] expected = greedy(model, prompts[r], maxNewTokens[r], contextLength);
+            int[] actual = futures.get(r).get().tokens;
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException("Request " + r + " generated " + Arrays.toString(actual)
+                                                + ", expected " + Arrays.toString(expected));
+            }
+        }
+        // The last request is capped by the context length, not by maxNewTokens
+        if (futures.get(6).get().tokens.length != contextLength) {
+            throw new IllegalStateException("Generation should stop when the context is full.");
+        }
+        if (metrics.completed != prompts.length || metrics.meanBatchSize <= 1.0) {
+            throw new IllegalStateException("Requests were not batched.");
+        }
+        System.out.println("All " + prompts.length + " requests match sequential greedy decoding.");
+
+        // An Error on the engine thread fails the running and the queued request, closes the
+        // engine and still reaches the thread's uncaught exception handler
+        CompletableFuture<Throwable> uncaught = new CompletableFuture<>();
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> uncaught.complete(e));
+        try (GenerationEngine engine = new GenerationEngine(model, 1, 6)) {
+            Error error = new AssertionError("selector failed");
+            CompletableFuture<Void> submitted = new CompletableFuture<>();
+            CompletableFuture<GenerationEngine.Result> running = engine.submit(prompts[0], 4, logits -> {
+                submitted.join(); // fail only once the second request waits in the queue
+                throw error;
+            });
+            CompletableFuture<GenerationEngine.Result> queued = engine.submit(prompts[1], 4);
+            submitted.complete(null);
+            if (uncaught.get(60, TimeUnit.SECONDS) != error) {
+                throw new IllegalStateException("The engine thread did not rethrow the error.");
+            }
+            for (CompletableFuture<GenerationEngine.Result> future : List.of(running, queued)) {
+                try {
+                    future.get(60, TimeUnit.SECONDS);
+                    throw new IllegalStateException("A request outlived the engine thread.");
+                } catch (ExecutionException e) {
+                    if (e.getCause() != error) {
+                        throw new IllegalStateException("Request failed with " + e.getCause() + ", expected " + error);
+                    }
+                }
+            }
+            try {
+                engine.submit(prompts[1], 4);
+                throw new IllegalStateException("A failed engine accepted a request.");
+            } catch (IllegalStateException e) {
+                if (e.getCause() != error) {
+                    throw e;
+                }
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        System.out.println("An engine thread error fails every request.");
+    }
+
+    private static int[] greedy(GPTModel model, int[] prompt, int maxNewTokens, int contextLength) {
+        GPTModel.Session session = model.newSession();
+        Matrix logits = session.prefill(prompt);
+        List<Integer> tokens = new ArrayList<>();
+        while (true) {
+            int next = GenerationEngine.argmax(logits);
+            tokens.add(next);
+            if (tokens.size() == maxNewTokens || session.getLength() >= contextLength) {
+                break;
+            }
+            logits = session.next(next);
+        }
+        return tokens.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class TestGenerator {
+    public static void main(String[] args) throws Exception {
+        int vocabSize = 300;
+        int embDim = 32;
+        int contextLength = 32;
+        int numLayers = 2;
+        int numHeads = 4;
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 17);
+        GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        model.loadWeights(weightsMap);
+        BytePairEncoding.Encoder encoder = tinyEncoder(vocabSize);
+        int[] prompt = encoder.encode("Hello there").stream().mapToInt(Integer::intValue).toArray();
+
+        // Greedy streaming matches decoding the same session by hand
+        Generator generator = new Generator(model, encoder).setMaxNewTokens(10);
+        List<Integer> streamed = new ArrayList<>();
+        Generator.Generation greedy = generator.generate("Hello there", new Sampler(vocabSize, 1).setTemperature(0.0),
+                                                         token -> streamed.add(token.id));
+        GPTModel.Session session = model.newSession();
+        Matrix logits = session.prefill(prompt);
+        for (int i = 0; i < 10; i++) {
+            int expected = GenerationEngine.argmax(logits);
+            check(streamed.get(i) == expected, "streamed token " + i + " differs from greedy decoding");
+            logits = session.next(expected);
+        }
+        check(greedy.getFinishReason() == Generator.FinishReason.LENGTH, "expected LENGTH");
+        check(greedy.getText().equals(encoder.decode(streamed)), "text should be the decoded tokens");
+        check(greedy.getTimeToFirstTokenNanos() > 0 && greedy.getTokenLatenciesNanos().length == 10, "missing timings");
+        System.out.printf("TTFT %.2f ms, mean decode step %.2f ms%n",
+                          greedy.getTimeToFirstTokenNanos() / 1e6, greedy.getMeanDecodeLatencyNanos() / 1e6);
+
+        // Scripted tokens: "Hi \u00e9!" where U+00E9 arrives as two tokens, one byte each
+        int[] script = { id(encoder, "H"), id(encoder, "i"), id(encoder, " "), 95, 96, id(encoder, "!"), id(encoder, "H") };
+        StringBuilder deltas = new StringBuilder();
+        Generator.Generation scripted = new Generator(model, encoder).setMaxNewTokens(script.length)
+            .start(prompt, new ScriptedSampler(vocabSize, script));
+        List<String> pieces = new ArrayList<>();
+        while (scripted.hasNext()) {
+            Generator.Token token = scripted.next();
+            pieces.add(token.text);
+            deltas.append(token.text);
+        }
+        check(pieces.get(3).isEmpty() && pieces.get(4).equals("\u00e9"), "a split character should be held back: " + pieces);
+        check(deltas.toString().equals(scripted.getText()), "deltas should add up to the text");
+
+        Generator.Generation stopToken = new Generator(model, encoder).setMaxNewTokens(10).setStopTokens(id(encoder, "!"))
+            .start(prompt, new ScriptedSampler(vocabSize, script));
+        drain(stopToken);
+        check(stopToken.getFinishReason() == Generator.FinishReason.STOP_TOKEN && stopToken.getText().equals("Hi \u00e9"),
+              "stop token should end generation before it: " + stopToken.getText());
+
+        Generator.Generation stopString = new Generator(model, encoder).setMaxNewTokens(10).setStopStrings("\u00e9!", "xyz")
+            .start(prompt, new ScriptedSampler(vocabSize, script));
+        drain(stopString);
+        check(stopString.getFinishReason() == Generator.FinishReason.STOP_STRING && stopString.getText().equals("Hi "),
+              "stop string should cut the text: " + stopString.getText());
+
+        // Ending without a token to carry it still flushes a character the last token left unfinished
+        int[] split = { id(encoder, "H"), id(encoder, "i"), 95, id(encoder, "!") };
+        Generator.Generation stopAfterByte = new Generator(model, encoder).setMaxNewTokens(10).setStopTokens(id(encoder, "!"))
+            .start(prompt, new ScriptedSampler(vocabSize, split));
+        drain(stopAfterByte);
+        check(stopAfterByte.getFinishReason() == Generator.FinishReason.STOP_TOKEN && stopAfterByte.getText().equals("Hi\ufffd"),
+              "stop token should flush the pending byte: " + stopAfterByte.getText());
+        long[] steps = stopAfterByte.getStepLatenciesNanos();
+        check(stopAfterByte.getTokenLatenciesNanos().length == 3 && steps.length == 4 && steps[3] > 0,
+              "the step that sampled the stop token should be timed");
+
+        Generator.Generation cancelled = new Generator(model, encoder).setMaxNewTokens(10)
+            .start(prompt, new ScriptedSampler(vocabSize, split));
+        for (int i = 0; i < 3; i++) {
+            cancelled.next();
+        }
+        cancelled.cancel();
+        check(!cancelled.hasNext() && cancelled.getFinishReason() == Generator.FinishReason.CANCELLED
+              && cancelled.getText().equals("Hi\ufffd"), "cancel should flush the pending byte: " + cancelled.getText());
+
+        // Publisher: one subscriber reads everything, another cancels after three tokens
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CollectingSubscriber all = new CollectingSubscriber(Long.MAX_VALUE, -1);
+        generator.publish("Hello there", new Sampler(vocabSize, 1).setTemperature(0.0), executor).subscribe(all);
+        check(all.done.await(10, TimeUnit.SECONDS) && all.completed, "publisher should complete");
+        check(all.tokens.equals(streamed), "published tokens should match the iterator");
+
+        // Requesting exactly the tokens before a stop token still completes, without further demand
+        CollectingSubscriber exact = new CollectingSubscriber(2, -1, false);
+        new Generator(model, encoder).setMaxNewTokens(10).setStopTokens(id(encoder, "!"))
+            .publish("Hello there", new ScriptedSampler(vocabSize, new int[] { id(encoder, "H"), id(encoder, "i"), id(encoder, "!") }),
+                     executor).subscribe(exact);
+        check(exact.done.await(10, TimeUnit.SECONDS) && exact.completed && exact.tokens.size() == 2,
+              "a generation ending on a stop token should complete without more demand");
+
+        CollectingSubscriber partial = new CollectingSubscriber(1, 3);
+        generator.publish("Hello there", new Sampler(vocabSize, 1).setTemperature(0.0), executor).subscribe(partial);
+        executor.shutdown();
+        check(executor.awaitTermination(10, TimeUnit.SECONDS), "executor should finish");
+        check(partial.tokens.size() == 3 && !partial.completed, "cancelled subscription should stop after 3 tokens");
+        System.out.println("Generator streaming, stop conditions and cancellation OK");
+    }
+
+    // Byte-level vocabulary: printable ASCII, then the two UTF-8 bytes of U+00E9, then filler tokens
+    private static BytePairEncoding.Encoder tinyEncoder(int vocabSize) {
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int b = 32; b < 127; b++) {
+            vocab.put(bytes.get(b), b - 32);
+        }
+        vocab.put(bytes.get(0xC3), 95);
+        vocab.put(bytes.get(0xA9), 96);
+        for (int id = 97; id < vocabSize; id++) {
+            vocab.put(bytes.get('a' + (id - 97) % 26) + bytes.get('a' + (id - 97) / 26), id);
+        }
+        return new BytePairEncoding.Encoder(vocab, new ArrayList<>(), "replace");
+    }
+
+    private static int id(BytePairEncoding.Encoder encoder, String text) {
+        return encoder.encode(text).get(0);
+    }
+
+    private static void drain(Generator.Generation generation) {
+        while (generation.hasNext()) {
+            generation.next();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    // Returns a fixed token sequence regardless of the logits
+    private static final class ScriptedSampler extends Sampler {
+        private final int[] script;
+        private int next;
+
+        ScriptedSampler(int vocabSize, int[] script) {
+            super(vocabSize, 0);
+            this.script = script;
+        }
+
+        @Override
+        public int sample(Matrix logits) {
+            return script[next++];
+        }
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<Generator.Token> {
+        final List<Integer> tokens = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long batch;
+        final int cancelAfter;
+        final boolean refill;
+        volatile boolean completed;
+        Flow.Subscription subscription;
+
+        CollectingSubscriber(long batch, int cancelAfter) {
+            this(batch, cancelAfter, true);
+        }
+
+        // Without refill only the first batch is ever requested
+        CollectingSubscriber(long batch, int cancelAfter, boolean refill) {
+            this.batch = batch;
+            this.cancelAfter = cancelAfter;
+            this.refill = refill;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(Generator.Token token) {
+            tokens.add(token.id);
+            if (tokens.size() == cancelAfter) {
+                subscription.cancel();
+            } else if (refill && batch != Long.MAX_VALUE) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            error.printStackTrace();
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+import java.util.Map;
+
+public class TestJsonWeights {
+    public static void main(String[] args) throws Exception {
+        int vocabSize = 500;
+        int embDim = 32;
+        int contextLength = 16;
+        int numLayers = 2;
+        int numHeads = 4;
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 5);
+
+        File file = File.createTempFile("weights", ".json");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            new Gson().toJson(weightsMap, writer);
+        }
+
+        GPTModel expected = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        expected.loadWeights(weightsMap);
+        GPTModel actual = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        actual.loadWeights(new JsonWeightsLoader(file.getPath()));
+
+        int[] tokenIndices = { 3, 14, 15, 92, 65, 35 };
+        double maxDiff = maxDiff(expected.forward(tokenIndices), actual.forward(tokenIndices));
+        System.out.println("Max difference vs map loader: " + maxDiff);
+        if (maxDiff != 0.0) {
+            throw new IllegalStateException("Streamed weights differ from the map weights.");
+        }
+
+        // A short row and a missing tensor fall back to random values with a warning, the rest still loads
+        @SuppressWarnings("unchecked")
+        List<Object> wpeRows = (List<Object>) weightsMap.get("wpe.weight");
+        wpeRows.set(3, List.of(1.0, 2.0));
+        weightsMap.remove("h.1.mlp.c_fc.bias");
+        try (FileWriter writer = new FileWriter(file)) {
+            new Gson().toJson(weightsMap, writer);
+        }
+        GPTModel partial = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        partial.loadWeights(new JsonWeightsLoader(file.getPath()));
+        Tensor wpe = partial.namedParameters().get("wpe.weight");
+        if (wpe.get(2, 0) != expected.namedParameters().get("wpe.weight").get(2, 0)) {
+            throw new IllegalStateException("Rows next to an invalid row should load normally.");
+        }
+    }
+
+    private static double maxDiff(Matrix a, Matrix b) {
+        double max = 0.0;
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < a.getCols(); j++) {
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,49 @@
+public class TestKVCache {
+    public static void main(String[] args) {
+        int vocabSize = 1000;
+        int embDim = 16;
+        int contextLength = 20;
+        int numLayers = 4;
+        int numHeads = 4;
+        double dropoutRate = 0.0;
+
+        GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, dropoutRate);
+
+        int[] prompt = new int[]{5, 23, 456, 789};
+        int[] generated = new int[]{12, 34, 678, 90};
+
+        // Prefill the prompt, then feed the remaining tokens one at a time
+        GPTModel.Session session = model.newSession();
+        Matrix prefillLogits = session.prefill(prompt);
+        double maxDiff = maxRowDiff(prefillLogits.getRow(0), model.forward(prompt).getRow(prompt.length - 1));
+
+        int[] tokens = prompt;
+        for (int token : generated) {
+            tokens = append(tokens, token);
+            Matrix stepLogits = session.next(token);
+            Matrix fullLogits = model.forward(tokens);
+            maxDiff = Math.max(maxDiff, maxRowDiff(stepLogits.getRow(0), fullLogits.getRow(tokens.length - 1)));
+        }
+
+        System.out.println("Cached length: " + session.getLength());
+        System.out.println("Max difference vs full forward: " + maxDiff);
+        if (session.getLength() != tokens.length || maxDiff > 1e-9) {
+            throw new IllegalStateException("Cached decoding does not match the full forward pass.");
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static double maxRowDiff(double[] a, double[] b) {
+        double max = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Random;
+
+public class TestKernels {
+    public static void main(String[] args) {
+        Kernels active = Kernels.ACTIVE;
+        Kernels scalar = new ScalarKernels();
+        System.out.println("Active kernels: " + active.name());
+
+        Random random = new Random(7);
+        int length = 3072 + 5; // not a multiple of any vector width, to cover the tails
+        double[] x = new double[length];
+        double[] y = new double[length];
+        double[] scale = new double[length];
+        double[] shift = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextGaussian() * 3.0;
+            y[i] = random.nextGaussian();
+            scale[i] = 1.0 + random.nextGaussian() * 0.1;
+            shift[i] = random.nextGaussian() * 0.1;
+        }
+        float[] xf = toFloat(x);
+        float[] yf = toFloat(y);
+
+        double maxDiff = 0.0;
+        maxDiff = Math.max(maxDiff, Math.abs(active.dot(x, 0, y, 0, length) - scalar.dot(x, 0, y, 0, length)) / length);
+        maxDiff = Math.max(maxDiff, Math.abs(active.dot(xf, 0, yf, 0, length) - scalar.dot(xf, 0, yf, 0, length)) / length);
+        byte[] q = new byte[length];
+        random.nextBytes(q);
+        maxDiff = Math.max(maxDiff, Math.abs(active.dotInt8(xf, 0, q, 0, length) - scalar.dotInt8(xf, 0, q, 0, length)) / (127.0 * length));
+
+        double[] expected = y.clone();
+        double[] actual = y.clone();
+        scalar.axpy(0.5, x, 0, expected, 0, length);
+        active.axpy(0.5, x, 0, actual, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(expected, actual));
+
+        scalar.softmax(x, 0, expected, 0, length);
+        active.softmax(x, 0, actual, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(expected, actual));
+
+        scalar.layerNorm(x, 0, scale, 0, shift, 0, 1e-5, expected, 0, length);
+        active.layerNorm(x, 0, scale, 0, shift, 0, 1e-5, actual, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(expected, actual));
+
+        scalar.gelu(x, 0, expected, 0, length);
+        active.gelu(x, 0, actual, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(expected, actual));
+
+        float[] expectedF = new float[length];
+        float[] actualF = new float[length];
+        scalar.gelu(xf, 0, expectedF, 0, length);
+        active.gelu(xf, 0, actualF, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(toDouble(expectedF), toDouble(actualF)));
+
+        scalar.layerNorm(xf, 0, toFloat(scale), 0, toFloat(shift), 0, 1e-5f, expectedF, 0, length);
+        active.layerNorm(xf, 0, toFloat(scale), 0, toFloat(shift), 0, 1e-5f, actualF, 0, length);
+        maxDiff = Math.max(maxDiff, maxDiff(toDouble(expectedF), toDouble(actualF)));
+
+        System.out.println("Max difference vs scalar kernels: " + maxDiff);
+        if (maxDiff > 1e-5) {
+            throw new IllegalStateException("Active kernels disagree with the scalar reference.");
+        }
+    }
+
+    private static double maxDiff(double[] a, double[] b) {
+        double max = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    private static float[] toFloat(double[] a) {
+        float[] result = new float[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (float) a[i];
+        }
+        return result;
+    }
+
+    private static double[] toDouble(float[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+public class TestMatrixOps {
+    public static void main(String[] args) {
+        for (Precision precision : Precision.values()) {
+            Matrix a = Matrix.random(5, 7, 0.0, 1.0, precision);
+            Matrix b = Matrix.random(5, 7, 2.0, 0.5, precision);
+            Matrix row = Matrix.random(1, 7, 0.0, 1.0, precision);
+            Matrix col = Matrix.random(5, 1, 3.0, 0.5, precision);
+            Matrix mask = new Matrix(5, 7, precision);
+            mask.set(1, 4, 1);
+
+            check(a.add(b), a.add(b, new Matrix(5, 7, precision)));
+            check(a.add(col), a.copy().addInPlace(col));
+            check(a.subtract(row), a.copy().subtractInPlace(row));
+            check(a.multiply(b), a.copy().multiplyInPlace(b));
+            check(a.divide(b), a.divide(b, a.copy()));
+            check(a.divide(3.0), a.copy().divideInPlace(3.0));
+            check(a.add(1.5), a.copy().addInPlace(1.5));
+            check(a.addRowVector(row), a.addRowVector(row, a.copy()));
+            check(b.pow(2.0), b.pow(2.0, b.copy()));
+            check(Matrix.sqrt(b), Matrix.sqrt(b, b.copy()));
+            check(Matrix.applyMask(a, mask), Matrix.applyMask(a, mask, a.copy()));
+            Matrix inPlace = a.copy();
+            check(Matrix.softmax(a), Matrix.softmax(inPlace, inPlace));
+
+            // Destinations can be strided views, e.g. the transpose or a column slice of a larger buffer
+            Matrix wide = new Matrix(5, 10, precision);
+            check(a.multiply(b), a.multiply(b, wide.getSubMatrix(0, 5, 2, 9)));
+            Matrix transposed = new Matrix(7, 5, precision);
+            check(a.add(b), a.add(b, Matrix.transpose(transposed)));
+
+            Matrix c = Matrix.random(7, 3, 0.0, 1.0, precision);
+            Matrix target = Matrix.random(5, 10, 0.0, 1.0, precision); // stale values must be overwritten
+            check(a.matMul(c), a.matMul(c, target.getSubMatrix(0, 5, 4, 7)));
+        }
+        System.out.println("In-place and destination overloads match the allocating ops.");
+    }
+
+    private static void check(Matrix expected, Matrix actual) {
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getCols(); j++) {
+                if (expected.get(i, j) != actual.get(i, j)) {
+                    throw new IllegalStateException("Mismatch at (" + i + ", " + j + "): " + expected.get(i, j) + " vs " + actual.get(i, j));
+                }
+            }
+        }
+    }
+}
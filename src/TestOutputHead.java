@@ -0,0 +1,42 @@
+public class TestOutputHead {
+    public static void main(String[] args) {
+        // Tied-embedding scores are dot products against the rows of wte, which must equal
+        // multiplying by its materialized transpose. The vocabulary spans several parallel slices.
+        int vocabSize = 5000;
+        int embDim = 48;
+        for (Precision precision : Precision.values()) {
+            Matrix wte = Matrix.random(vocabSize, embDim, 0.0, 0.1, precision);
+            OutputHead head = new OutputHead(wte);
+            double tolerance = precision == Precision.FLOAT32 ? 1e-4 : 1e-12;
+            for (int rows : new int[] { 1, 7 }) {
+                Matrix x = Matrix.random(rows, embDim, 0.0, 1.0, precision);
+                Matrix expected = x.matMul(Matrix.transpose(wte));
+                check(head.forward(x), expected, tolerance, precision + ", " + rows + " rows");
+
+                // Padded (non-contiguous) input rows and a logits view of a larger buffer
+                Matrix strided = new Matrix(rows, embDim + 5, precision).getSubMatrix(0, rows, 3, embDim + 3);
+                strided.copyFrom(x);
+                Matrix logits = new Matrix(rows + 2, vocabSize + 3, precision).getSubMatrix(1, rows + 1, 2, vocabSize + 2);
+                check(head.forward(strided, logits), expected, tolerance, precision + ", " + rows + " rows into a view");
+            }
+        }
+        System.out.println("Output head matches x * wte^T");
+    }
+
+    private static void check(Matrix actual, Matrix expected, double tolerance, String label) {
+        check(actual.getRows() == expected.getRows() && actual.getCols() == expected.getCols(), label + ": wrong shape");
+        double maxDiff = 0.0;
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getCols(); j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(actual.get(i, j) - expected.get(i, j)));
+            }
+        }
+        check(maxDiff < tolerance, label + ": logits differ by " + maxDiff);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+
+public class TestPrecision {
+    public static void main(String[] args) {
+        int vocabSize = 1000;
+        int embDim = 16;
+        int contextLength = 20;
+        int numLayers = 4;
+        int numHeads = 4;
+        double dropoutRate = 0.0;
+
+        // Same random weights loaded into a double and a float model
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 42);
+        GPTModel reference = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, dropoutRate, Precision.FLOAT64);
+        GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, dropoutRate, Precision.FLOAT32);
+        reference.loadWeights(weightsMap);
+        model.loadWeights(weightsMap);
+
+        int[] tokenIndices = new int[]{5, 23, 456, 789, 12, 34, 678, 90};
+        Matrix expected = reference.forward(tokenIndices);
+        Matrix actual = model.forward(tokenIndices);
+
+        double maxDiff = 0.0;
+        double maxAbs = 0.0;
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getCols(); j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(expected.get(i, j) - actual.get(i, j)));
+                maxAbs = Math.max(maxAbs, Math.abs(expected.get(i, j)));
+            }
+        }
+
+        System.out.println("Logits precision: " + actual.precision());
+        System.out.println("Max |logit|: " + maxAbs + ", max float32 vs float64 difference: " + maxDiff);
+        if (actual.precision() != Precision.FLOAT32 || maxDiff > 1e-4 * Math.max(1.0, maxAbs)) {
+            throw new IllegalStateException("float32 logits do not match the float64 reference.");
+        }
+    }
+}
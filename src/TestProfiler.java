@@ -0,0 +1,75 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TestProfiler {
+    public static void main(String[] args) throws Exception {
+        GPTModel model = new GPTModel(100, 32, 16, 2, 4, 0.0);
+        int[] tokens = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+        // Disabled: no spans, no allocation, nothing recorded
+        Profiler.setEnabled(false);
+        Profiler.reset();
+        for (int i = 0; i < 200_000; i++) { // load and compile first
+            Profiler.end(Profiler.start(Profiler.Op.LINEAR), 1, 1, 1);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            Profiler.end(Profiler.start(Profiler.Op.LINEAR), 1, 1, 1);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        check(allocated < 1024, "disabled profiling allocated " + allocated + " bytes");
+        model.forward(tokens);
+        check(!Profiler.report().contains("forward"), "nothing should be recorded while disabled");
+
+        // Enabled, with a JFR recording of the op events
+        File jfr = File.createTempFile("profile", ".jfr");
+        jfr.deleteOnExit();
+        Profiler.setEnabled(true);
+        try (Recording recording = new Recording()) {
+            recording.enable("simplellm.Op");
+            recording.start();
+            model.forward(tokens);
+            recording.stop();
+            recording.dump(jfr.toPath());
+        } finally {
+            Profiler.setEnabled(false);
+        }
+
+        Map<String, Long> flops = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int[] layers = new int[2];
+        for (RecordedEvent event : RecordingFile.readAllEvents(jfr.toPath())) {
+            String op = event.getString("op");
+            flops.merge(op, event.getLong("flops"), Long::sum);
+            counts.merge(op, 1, Integer::sum);
+            int layer = event.getInt("layer");
+            if (op.equals("MLP_UP")) {
+                layers[layer]++;
+            }
+        }
+        check(counts.get("FORWARD") == 1 && counts.get("BLOCK") == 2, "one forward span and one per block: " + counts);
+        check(counts.get("QKV_PROJECTION") == 6 && counts.get("LAYER_NORM") == 5, "per-op event counts: " + counts);
+        check(layers[0] == 1 && layers[1] == 1, "ops should be attributed to their layer");
+        check(flops.get("MLP_UP") == 2 * Profiler.linearFlops(8, 32, 128), "MLP_UP FLOPs");
+        check(flops.get("LM_HEAD") == 2L * 8 * 32 * 100, "LM_HEAD FLOPs");
+        check(flops.get("ATTENTION") == 2 * (8L * 9 / 2) * (4 * 32 + 5 * 4), "ATTENTION FLOPs");
+
+        String report = Profiler.report(50, 20);
+        System.out.print(report);
+        check(report.contains("mlp_up") && report.contains("layer 1") && report.contains("memory"), "roofline report");
+        Profiler.reset();
+        System.out.println("Profiler accounting and JFR events OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
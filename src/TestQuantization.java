@@ -0,0 +1,103 @@
+import java.util.Arrays;
+import java.util.Map;
+
+public class TestQuantization {
+    public static void main(String[] args) {
+        // Round trip: every dequantized value is within half a step of its group's scale
+        Matrix m = Matrix.random(37, 100, 0.0, 0.1, Precision.FLOAT64);
+        for (int groupSize : new int[] { 0, 32 }) {
+            QuantizedMatrix q = QuantizedMatrix.quantize(m, groupSize);
+            Matrix back = q.dequantize();
+            int group = groupSize == 0 ? m.getCols() : groupSize;
+            for (int r = 0; r < m.getRows(); r++) {
+                double[] row = m.getRow(r);
+                for (int c = 0; c < row.length; c++) {
+                    int start = c / group * group;
+                    double maxAbs = Arrays.stream(row, start, Math.min(row.length, start + group)).map(Math::abs).max().orElse(0);
+                    check(Math.abs(back.get(r, c) - row[c]) <= maxAbs / 127.0 / 2 + 1e-7,
+                          "group " + groupSize + ": (" + r + ", " + c + ") dequantizes to " + back.get(r, c) + ", expected " + row[c]);
+                }
+            }
+        }
+
+        // Quantized models against the fp64 reference
+        int vocabSize = 2000;
+        int embDim = 64;
+        int contextLength = 64;
+        int numLayers = 4;
+        int numHeads = 4;
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 1234);
+        int[] tokenIndices = new int[64];
+        for (int i = 0; i < tokenIndices.length; i++) {
+            tokenIndices[i] = (i * 7919 + 13) % vocabSize;
+        }
+        GPTModel reference = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0, Precision.FLOAT64);
+        reference.loadWeights(weightsMap);
+        Matrix expected = reference.forward(tokenIndices);
+
+        for (Precision precision : Precision.values()) {
+            for (int groupSize : new int[] { 0, 32 }) {
+                GPTModel model = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0, precision);
+                model.loadWeights(weightsMap);
+                model.quantize(groupSize);
+                check(model.isQuantized(), "quantize() did not quantize the model");
+                Matrix actual = model.forward(tokenIndices);
+
+                double maxDiff = 0.0;
+                double sumDiff = 0.0;
+                double sumRef = 0.0;
+                int agree = 0;
+                for (int i = 0; i < expected.getRows(); i++) {
+                    double[] e = expected.getRow(i);
+                    double[] a = actual.getRow(i);
+                    for (int j = 0; j < e.length; j++) {
+                        maxDiff = Math.max(maxDiff, Math.abs(e[j] - a[j]));
+                        sumDiff += Math.abs(e[j] - a[j]);
+                        sumRef += Math.abs(e[j]);
+                    }
+                    int top1 = GenerationEngine.argmax(actual.getSubMatrix(i, i + 1, 0, vocabSize));
+                    if (top1 == GenerationEngine.argmax(expected.getSubMatrix(i, i + 1, 0, vocabSize))) {
+                        agree++;
+                    } else {
+                        // A disagreement must be a near tie: the pick is still among the reference's top 3
+                        int rank = 0;
+                        for (double v : e) {
+                            if (v > e[top1]) {
+                                rank++;
+                            }
+                        }
+                        check(rank < 3, precision + ", group " + groupSize + ": position " + i + " picked reference rank " + (rank + 1));
+                    }
+                }
+                double relative = sumDiff / sumRef;
+                System.out.printf("%s, group %s: max |diff| %.4f, relative error %.2f%%, top-1 agreement %d/%d%n",
+                                  precision, groupSize == 0 ? "per-row" : String.valueOf(groupSize), maxDiff,
+                                  100 * relative, agree, expected.getRows());
+                check(relative < 0.03, precision + ", group " + groupSize + ": relative error " + relative);
+                check(maxDiff < 0.2, precision + ", group " + groupSize + ": max |diff| " + maxDiff);
+                check(agree >= 0.9 * expected.getRows(), precision + ", group " + groupSize + ": top-1 agreement " + agree);
+
+                // The int8 embedding gather and head also serve incremental decoding
+                GPTModel.Session session = model.newSession();
+                Matrix logits = session.prefill(Arrays.copyOf(tokenIndices, 8));
+                for (int i = 8; i < 16; i++) {
+                    logits = session.next(tokenIndices[i]);
+                }
+                Matrix full = model.forward(Arrays.copyOf(tokenIndices, 16));
+                double decodeDiff = 0.0;
+                for (int v = 0; v < vocabSize; v++) {
+                    decodeDiff = Math.max(decodeDiff, Math.abs(logits.get(0, v) - full.get(15, v)));
+                }
+                check(decodeDiff < (precision == Precision.FLOAT32 ? 1e-3 : 1e-9),
+                      precision + ", group " + groupSize + ": decoded logits differ by " + decodeDiff);
+            }
+        }
+        System.out.println("Int8 quantization OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
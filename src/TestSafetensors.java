@@ -0,0 +1,82 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+public class TestSafetensors {
+    public static void main(String[] args) throws Exception {
+        int vocabSize = 500;
+        int embDim = 32;
+        int contextLength = 16;
+        int numLayers = 2;
+        int numHeads = 4;
+        Map<String, Object> weightsMap = WeightsLoader.randomWeights(vocabSize, embDim, contextLength, numLayers, 3);
+
+        File file = File.createTempFile("weights", ".safetensors");
+        file.deleteOnExit();
+        writeSafetensors(weightsMap, file);
+
+        GPTModel expected = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        expected.loadWeights(weightsMap);
+        GPTModel actual = new GPTModel(vocabSize, embDim, contextLength, numLayers, numHeads, 0.0);
+        long start = System.nanoTime();
+        actual.loadWeights(new SafetensorsLoader(file.getPath()));
+        System.out.println("Loaded " + file.length() + " bytes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        int[] tokenIndices = { 1, 42, 7, 499, 0, 256 };
+        Matrix a = expected.forward(tokenIndices);
+        Matrix b = actual.forward(tokenIndices);
+        double maxDiff = 0.0;
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < a.getCols(); j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(a.get(i, j) - b.get(i, j)));
+            }
+        }
+        // The file stores float32, so only rounding differences are expected
+        System.out.println("Max difference vs JSON-style map: " + maxDiff);
+        if (maxDiff > 1e-4) {
+            throw new IllegalStateException("Safetensors weights differ from the map weights.");
+        }
+    }
+
+    // Writes every entry as float32 in the HuggingFace layout
+    private static void writeSafetensors(Map<String, Object> weightsMap, File file) throws Exception {
+        StringBuilder header = new StringBuilder("{");
+        ByteBuffer data = ByteBuffer.allocate(64 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        for (Map.Entry<String, Object> entry : weightsMap.entrySet()) {
+            List<?> list = (List<?>) entry.getValue();
+            int begin = data.position();
+            String shape;
+            if (list.get(0) instanceof List) {
+                shape = "[" + list.size() + "," + ((List<?>) list.get(0)).size() + "]";
+                for (Object row : list) {
+                    for (Object value : (List<?>) row) {
+                        data.putFloat(((Number) value).floatValue());
+                    }
+                }
+            } else {
+                shape = "[" + list.size() + "]";
+                for (Object value : list) {
+                    data.putFloat(((Number) value).floatValue());
+                }
+            }
+            if (header.length() > 1) {
+                header.append(',');
+            }
+            header.append('"').append(entry.getKey()).append("\":{\"dtype\":\"F32\",\"shape\":").append(shape)
+                  .append(",\"data_offsets\":[").append(begin).append(',').append(data.position()).append("]}");
+        }
+        header.append('}');
+
+        byte[] headerBytes = header.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer length = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, headerBytes.length);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(length.array());
+            out.write(headerBytes);
+            out.write(data.array(), 0, data.position());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.lang.management.ManagementFactory;
+
+public class TestSampler {
+    public static void main(String[] args) {
+        int vocabSize = 1000;
+        Matrix logits = Matrix.random(2, vocabSize, 0.0, 2.0);
+        int best = 0;
+        for (int j = 1; j < vocabSize; j++) {
+            if (logits.get(1, j) > logits.get(1, best)) {
+                best = j;
+            }
+        }
+
+        // Greedy: temperature 0 and top-k 1 both pick the largest logit of the last row
+        check(new Sampler(vocabSize, 1).setTemperature(0.0).sample(logits) == best, "temperature 0 should be greedy");
+        check(new Sampler(vocabSize, 1).setTopK(1).sample(logits) == best, "top-k 1 should be greedy");
+
+        // The same seed replays the same tokens
+        Sampler a = new Sampler(vocabSize, 42).setTopK(50).setTopP(0.9).setTemperature(0.8);
+        Sampler b = new Sampler(vocabSize, 42).setTopK(50).setTopP(0.9).setTemperature(0.8);
+        for (int i = 0; i < 100; i++) {
+            check(a.sample(logits) == b.sample(logits), "seeded samplers should agree");
+        }
+
+        // Top-k only returns the k largest logits
+        double[] sorted = logits.getRow(1);
+        java.util.Arrays.sort(sorted);
+        double tenth = sorted[vocabSize - 10];
+        Sampler topK = new Sampler(vocabSize, 7).setTopK(10).setTemperature(5.0);
+        for (int i = 0; i < 500; i++) {
+            check(logits.get(1, topK.sample(logits)) >= tenth, "top-k returned a token outside the top 10");
+        }
+
+        // Top-p on a known distribution: probabilities .5, .3, .15, .05 with p = .7 keep the first two,
+        // drawn in about a 5:3 ratio
+        Matrix fixed = new Matrix(new double[][] { { Math.log(0.15), Math.log(0.5), Math.log(0.05), Math.log(0.3) } });
+        Sampler nucleus = new Sampler(4, 3).setTopP(0.7);
+        int[] hits = new int[4];
+        for (int i = 0; i < 8000; i++) {
+            hits[nucleus.sample(fixed)]++;
+        }
+        check(hits[0] == 0 && hits[2] == 0, "top-p kept tokens outside the nucleus");
+        double ratio = hits[1] / (double) hits[3];
+        check(Math.abs(ratio - 5.0 / 3.0) < 0.15, "top-p ratio " + ratio + " should be close to 5/3");
+
+        // Repetition and frequency penalties push a repeated greedy token down
+        Sampler repeat = new Sampler(vocabSize, 1).setTemperature(0.0).setRepetitionPenalty(1e6);
+        int first = repeat.sample(logits);
+        check(repeat.sample(logits) != first, "repetition penalty should avoid the previous token");
+        Sampler frequency = new Sampler(vocabSize, 1).setTemperature(0.0).setFrequencyPenalty(1e6);
+        frequency.observe(best);
+        check(frequency.sample(logits) != best, "frequency penalty should apply to observed tokens");
+        frequency.reset();
+        check(frequency.sample(logits) == best, "reset should clear the counts");
+
+        // Equal logits must not degrade the selection
+        Sampler flat = new Sampler(50257, 9).setTopK(40).setTopP(0.95);
+        Matrix zeros = new Matrix(1, 50257);
+        long start = System.nanoTime();
+        flat.sample(zeros);
+        System.out.println("Flat 50257 logits: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        // Steady state allocates nothing per token
+        Matrix vocabLogits = Matrix.random(1, 50257, 0.0, 3.0);
+        Sampler steady = new Sampler(50257, 5).setTemperature(0.9).setTopK(100).setTopP(0.95)
+            .setRepetitionPenalty(1.2).setFrequencyPenalty(0.1);
+        for (int i = 0; i < 200; i++) {
+            steady.sample(vocabLogits);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            steady.sample(vocabLogits);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.printf("1000 samples over 50257 logits: %.3f ms/token, %d bytes allocated%n",
+                          elapsed / 1e9, allocated);
+        check(allocated < 1000, "sampling should not allocate per token");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestStreamDecoder {
+    public static void main(String[] args) {
+        // Byte-level vocabulary with a few merges, so multi-byte characters span several tokens
+        Map<Integer, String> bytes = BytePairEncoding.bytesToUnicode();
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            vocab.put(bytes.get(b), b);
+        }
+        List<BytePairEncoding.Pair<String, String>> merges = new ArrayList<>();
+        String[][] pairs = { { "t", "h" }, { "th", "e" }, { "\u0120", "the" }, { "\u00c3", "\u00a9" } }; // the two UTF-8 bytes of U+00E9 as one token
+        for (String[] pair : pairs) {
+            merges.add(new BytePairEncoding.Pair<>(pair[0], pair[1]));
+            vocab.putIfAbsent(pair[0] + pair[1], vocab.size());
+        }
+        BytePairEncoding.Encoder encoder = new BytePairEncoding.Encoder(vocab, merges, "replace");
+
+        String text = "the caf\u00e9 served \u4e2d\u6587 and \ud83d\ude00 to the crowd \u2014 d\u00e9j\u00e0 vu";
+        List<Integer> tokens = encoder.encode(text);
+        check(encoder.decode(tokens).equals(text), "decode(encode(text)) should round-trip");
+
+        BytePairEncoding.Encoder.StreamDecoder stream = encoder.newStreamDecoder();
+        StringBuilder streamed = new StringBuilder();
+        int held = 0;
+        for (int token : tokens) {
+            String piece = stream.accept(token);
+            check(piece.indexOf('\ufffd') < 0, "streamed a replacement character");
+            if (piece.isEmpty()) {
+                held++;
+            }
+            streamed.append(piece);
+        }
+        streamed.append(stream.flush());
+        check(streamed.toString().equals(text), "streamed text should equal the input: " + streamed);
+        check(held > 0, "some tokens should have ended inside a character");
+
+        // A truncated character comes out as U+FFFD only on flush
+        BytePairEncoding.Encoder.StreamDecoder truncated = encoder.newStreamDecoder();
+        check(truncated.accept(0xE4).isEmpty() && truncated.accept(0xB8).isEmpty(), "partial bytes should be held");
+        check(truncated.flush().equals("\ufffd"), "flush should replace an unfinished character");
+        check(truncated.accept('a').equals("a"), "the decoder should be reusable after flush");
+        System.out.println(tokens.size() + " tokens streamed, " + held + " held back until their character completed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
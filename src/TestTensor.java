@@ -0,0 +1,48 @@
+public class TestTensor {
+    public static void main(String[] args) {
+        int rows = 6;
+        int cols = 8;
+
+        Matrix m = Matrix.random(rows, cols, 0.0, 1.0);
+
+        // Transpose, submatrix and reshape are views over the same buffer
+        Matrix t = Matrix.transpose(m);
+        Matrix sub = m.getSubMatrix(1, 4, 2, 6);
+        Matrix reshaped = m.reshape(cols, rows);
+        check(t.tensor().data() == m.tensor().data(), "transpose shares storage");
+        check(sub.tensor().data() == m.tensor().data(), "getSubMatrix shares storage");
+        check(reshaped.tensor().data() == m.tensor().data(), "reshape shares storage");
+        check(t.get(3, 2) == m.get(2, 3), "transpose element");
+        check(sub.get(0, 0) == m.get(1, 2), "submatrix element");
+        check(reshaped.get(1, 0) == m.get(0, 6), "reshape element");
+
+        // Head split: (seq, heads * headDim) -> (seq, headDim) per head
+        Tensor heads = m.tensor().view(rows, 2, cols / 2);
+        Matrix head1 = new Matrix(heads.select(1, 1));
+        check(head1.get(2, 1) == m.get(2, cols / 2 + 1), "head view element");
+
+        // Operations on strided views match operations on contiguous copies
+        Matrix product = sub.matMul(t.getSubMatrix(2, 6, 0, 3));
+        Matrix expected = sub.contiguous().matMul(t.getSubMatrix(2, 6, 0, 3).contiguous());
+        check(maxDiff(product, expected) < 1e-12, "matMul on views");
+        check(maxDiff(t.add(t), t.contiguous().multiply(2.0)) < 1e-12, "add on transposed view");
+
+        System.out.println("Tensor views OK: " + product.getRows() + "x" + product.getCols() + " product from strided inputs");
+    }
+
+    private static double maxDiff(Matrix a, Matrix b) {
+        double max = 0.0;
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < a.getCols(); j++) {
+                max = Math.max(max, Math.abs(a.get(i, j) - b.get(i, j)));
+            }
+        }
+        return max;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("Check failed: " + what);
+        }
+    }
+}
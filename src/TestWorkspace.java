@@ -0,0 +1,81 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+public class TestWorkspace {
+    public static void main(String[] args) {
+        for (Precision precision : Precision.values()) {
+            GPTModel model = new GPTModel(1000, 64, 256, 4, 4, 0.0, precision);
+            int[] prompt = { 5, 17, 42, 99, 3, 250, 7, 8, 600, 12, 1, 2 };
+
+            // Same logits as the stateless forward pass, which allocates a fresh workspace
+            GPTModel.Session session = model.newSession();
+            int[] sequence = Arrays.copyOf(prompt, prompt.length + 40);
+            Matrix logits = session.prefill(prompt);
+            for (int i = prompt.length; i < sequence.length; i++) {
+                sequence[i] = GenerationEngine.argmax(logits);
+                logits = session.next(sequence[i]);
+            }
+            Matrix reference = model.forward(sequence);
+            double maxDiff = 0.0;
+            for (int v = 0; v < 1000; v++) {
+                maxDiff = Math.max(maxDiff, Math.abs(logits.get(0, v) - reference.get(sequence.length - 1, v)));
+            }
+            check(maxDiff < (precision == Precision.FLOAT32 ? 1e-3 : 1e-9), precision + ": logits differ by " + maxDiff);
+
+            // Steady-state decoding: activations, logits, GEMM panels, attention slices and the per-layer
+            // cache arguments are all reused, so only a few per-token views remain and an extra layer costs
+            // nothing. Measure two depths to catch per-layer regressions, which a 4-layer total hides.
+            long deep = decodeAllocation(new GPTModel(1000, 64, 256, 6, 4, 0.0, precision), prompt);
+            long shallow = decodeAllocation(new GPTModel(1000, 64, 256, 2, 4, 0.0, precision), prompt);
+            long perLayer = (deep - shallow) / 4;
+            System.out.printf("%s: %d bytes allocated per decoded token (6 layers), %d per layer, workspace holds %d bytes%n",
+                              precision, deep, perLayer, workspaceBytes(model));
+            check(deep < 4 * 1024, precision + ": decoding allocated " + deep + " bytes per token");
+            check(perLayer < 128, precision + ": decoding allocated " + perLayer + " bytes per token and layer");
+
+            // The int8 projections and head convert their input into a per-thread buffer as well
+            GPTModel quantized = new GPTModel(1000, 64, 256, 6, 4, 0.0, precision);
+            quantized.quantize(0);
+            long int8 = decodeAllocation(quantized, prompt);
+            System.out.printf("%s, int8: %d bytes allocated per decoded token (6 layers)%n", precision, int8);
+            check(int8 < 4 * 1024, precision + ", int8: decoding allocated " + int8 + " bytes per token");
+        }
+        System.out.println("Workspace reuse OK");
+    }
+
+    // Fewest bytes allocated per token over 100 steps of a new session, after 20 unmeasured ones.
+    // Until the kernels are JIT-compiled the Vector API path boxes its vectors (over 100 KB per
+    // token), and when C2 gets to them varies from run to run, so the best of many sessions counts.
+    private static long decodeAllocation(GPTModel model, int[] prompt) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 30; round++) {
+            GPTModel.Session session = model.newSession();
+            Matrix logits = session.prefill(prompt);
+            for (int i = 0; i < 20; i++) {
+                logits = session.next(GenerationEngine.argmax(logits));
+            }
+            long before = allocatedBytes();
+            for (int i = 0; i < 100; i++) {
+                logits = session.next(GenerationEngine.argmax(logits));
+            }
+            best = Math.min(best, (allocatedBytes() - before) / 100);
+        }
+        return best;
+    }
+
+    private static long workspaceBytes(GPTModel model) {
+        return model.newSession().getWorkspace().setRows(1).setLogitRows(1).bytes();
+    }
+
+    // Bytes allocated so far by every live thread, so work handed to pool threads counts too
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(b -> b > 0).sum();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
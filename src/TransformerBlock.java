@@ -5,21 +5,74 @@ public class TransformerBlock {
     public final FeedForward feedForward;
 
     public TransformerBlock(int embDim, int numHeads, int contextLength, double dropoutRate) {
-        this.norm1 = new LayerNorm(embDim);
-        this.attention = new MultiHeadAttention(embDim, embDim, contextLength, dropoutRate, numHeads);
-        this.norm2 = new LayerNorm(embDim);
-        this.feedForward = new FeedForward(embDim);
+        this(embDim, numHeads, contextLength, dropoutRate, Precision.FLOAT64);
+    }
+
+    public TransformerBlock(int embDim, int numHeads, int contextLength, double dropoutRate, Precision precision) {
+        this.norm1 = new LayerNorm(embDim, precision);
+        this.attention = new MultiHeadAttention(embDim, embDim, contextLength, dropoutRate, numHeads, precision);
+        this.norm2 = new LayerNorm(embDim, precision);
+        this.feedForward = new FeedForward(embDim, precision);
+    }
+
+    // Training mode enables dropout; evaluation mode (the default) runs deterministically
+    public void setTraining(boolean training) {
+        attention.setTraining(training);
+    }
+
+    public boolean isTraining() {
+        return attention.isTraining();
+    }
+
+    // Int8 weight-only quantization of every Linear in the block
+    public void quantize(int groupSize) {
+        attention.quantize(groupSize);
+        feedForward.quantize(groupSize);
     }
 
     public Matrix forward(Matrix x) {
+        return forward(x, new int[] { 0, x.getRows() }, null, 0);
+    }
+
+    // Runs only the new positions in x, attending over the cached keys/values of this layer
+    public Matrix forward(Matrix x, KVCache cache, int layer) {
+        return forward(x, new int[] { 0, x.getRows() }, new KVCache[] { cache }, layer);
+    }
+
+    // Ragged batch: rows [starts[s], starts[s + 1]) belong to sequence s, which continues
+    // caches[s] (or starts at position 0 when caches is null). See MultiHeadAttention.
+    public Matrix forward(Matrix x, int[] starts, KVCache[] caches, int layer) {
+        Workspace workspace = new Workspace(x.getCols(), 0, x.precision()).setRows(x.getRows());
+        workspace.hidden().copyFrom(x);
+        return forward(workspace, starts, caches, layer);
+    }
 
-        Matrix normed1 = norm1.forward(x); 
-        Matrix attentionOut = attention.forward(normed1); 
-        Matrix add1 = x.add(attentionOut); 
-        Matrix normed2 = norm2.forward(add1); 
-        Matrix feedForwardOut = feedForward.forward(normed2); 
-        Matrix output = add1.add(feedForwardOut); 
+    // Same, on the residual stream in workspace.hidden(), which is updated in place and returned.
+    // Every intermediate lives in the workspace, so the block allocates no activations.
+    public Matrix forward(Workspace workspace, int[] starts, KVCache[] caches, int layer) {
+        Matrix x = workspace.hidden();
+        Matrix[] keyCaches = null;
+        Matrix[] valueCaches = null;
+        int[] pastLengths = null;
+        if (caches != null) {
+            keyCaches = workspace.setSequences(caches.length).keyCaches();
+            valueCaches = workspace.valueCaches();
+            pastLengths = workspace.pastLengths();
+            for (int s = 0; s < caches.length; s++) {
+                keyCaches[s] = caches[s].getKeys(layer);
+                valueCaches[s] = caches[s].getValues(layer);
+                pastLengths[s] = caches[s].getLength();
+            }
+        }
 
-        return output; 
+        Profiler.Span span = Profiler.start(Profiler.Op.BLOCK, layer);
+        Matrix normed = norm1.forward(x, workspace.normed());
+        Matrix attentionOut = attention.forward(normed, starts, keyCaches, valueCaches, pastLengths, workspace);
+        Matrix add1 = attentionOut.addInPlace(x);      // residual, reusing the attention output
+        norm2.forward(add1, normed);                    // normed is free again once attention is done
+        feedForward.forward(normed, workspace.feedForward(), x); // x is free again once add1 holds it
+        x.addInPlace(add1);
+        Profiler.end(span);
+        return x;
     }
 }
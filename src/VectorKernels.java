@@ -0,0 +1,269 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Explicit SIMD versions of the Kernels loops using the preferred (widest) species,
+// e.g. 8 doubles / 16 floats per vector on AVX-512. Each loop runs whole vectors
+// up to loopBound and finishes the remainder with scalar code.
+// Only loaded through Kernels.select(), so the rest of the code runs without the module.
+public class VectorKernels implements Kernels {
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+    // One byte lane per float lane; null when that would be narrower than the smallest vector shape
+    private static final VectorSpecies<Byte> B = F.length() >= 8
+        ? VectorSpecies.of(byte.class, VectorShape.forBitSize(F.length() * 8)) : null;
+    private static final double SQRT_2_OVER_PI = Math.sqrt(2.0 / Math.PI);
+
+    @Override
+    public String name() {
+        return "Vector API (" + D.vectorBitSize() + "-bit, " + D.length() + " doubles / " + F.length() + " floats)";
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector a = DoubleVector.broadcast(D, alpha);
+        int i = 0;
+        for (int bound = D.loopBound(length); i < bound; i += D.length()) {
+            DoubleVector vy = DoubleVector.fromArray(D, y, yOffset + i);
+            DoubleVector.fromArray(D, x, xOffset + i).fma(a, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector a = FloatVector.broadcast(F, alpha);
+        int i = 0;
+        for (int bound = F.loopBound(length); i < bound; i += F.length()) {
+            FloatVector vy = FloatVector.fromArray(F, y, yOffset + i);
+            FloatVector.fromArray(F, x, xOffset + i).fma(a, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(D);
+        int i = 0;
+        for (int bound = D.loopBound(length); i < bound; i += D.length()) {
+            acc = DoubleVector.fromArray(D, x, xOffset + i).fma(DoubleVector.fromArray(D, y, yOffset + i), acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector acc = FloatVector.zero(F);
+        int i = 0;
+        for (int bound = F.loopBound(length); i < bound; i += F.length()) {
+            acc = FloatVector.fromArray(F, x, xOffset + i).fma(FloatVector.fromArray(F, y, yOffset + i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i] * y[yOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] x, int xOffset, byte[] q, int qOffset, int length) {
+        int i = 0;
+        float sum = 0.0f;
+        if (B != null) {
+            FloatVector acc = FloatVector.zero(F);
+            for (int bound = F.loopBound(length); i < bound; i += F.length()) {
+                FloatVector w = (FloatVector) ByteVector.fromArray(B, q, qOffset + i).convertShape(VectorOperators.B2F, F, 0);
+                acc = FloatVector.fromArray(F, x, xOffset + i).fma(w, acc);
+            }
+            sum = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += x[xOffset + i] * q[qOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmax(double[] x, int xOffset, double[] out, int outOffset, int length) {
+        int bound = D.loopBound(length);
+        DoubleVector vmax = DoubleVector.broadcast(D, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += D.length()) {
+            vmax = vmax.max(DoubleVector.fromArray(D, x, xOffset + i));
+        }
+        double max = vmax.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i++) {
+            max = Math.max(max, x[xOffset + i]);
+        }
+
+        DoubleVector vsum = DoubleVector.zero(D);
+        for (i = 0; i < bound; i += D.length()) {
+            DoubleVector e = DoubleVector.fromArray(D, x, xOffset + i).sub(max).lanewise(VectorOperators.EXP);
+            e.intoArray(out, outOffset + i);
+            vsum = vsum.add(e);
+        }
+        double sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            out[outOffset + i] = Math.exp(x[xOffset + i] - max);
+            sum += out[outOffset + i];
+        }
+
+        double inv = 1.0 / sum;
+        for (i = 0; i < bound; i += D.length()) {
+            DoubleVector.fromArray(D, out, outOffset + i).mul(inv).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] *= inv;
+        }
+    }
+
+    @Override
+    public void softmax(float[] x, int xOffset, float[] out, int outOffset, int length) {
+        int bound = F.loopBound(length);
+        FloatVector vmax = FloatVector.broadcast(F, Float.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < bound; i += F.length()) {
+            vmax = vmax.max(FloatVector.fromArray(F, x, xOffset + i));
+        }
+        float max = vmax.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i++) {
+            max = Math.max(max, x[xOffset + i]);
+        }
+
+        FloatVector vsum = FloatVector.zero(F);
+        for (i = 0; i < bound; i += F.length()) {
+            FloatVector e = FloatVector.fromArray(F, x, xOffset + i).sub(max).lanewise(VectorOperators.EXP);
+            e.intoArray(out, outOffset + i);
+            vsum = vsum.add(e);
+        }
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            out[outOffset + i] = (float) Math.exp(x[xOffset + i] - max);
+            sum += out[outOffset + i];
+        }
+
+        float inv = 1.0f / sum;
+        for (i = 0; i < bound; i += F.length()) {
+            FloatVector.fromArray(F, out, outOffset + i).mul(inv).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] *= inv;
+        }
+    }
+
+    @Override
+    public void layerNorm(double[] x, int xOffset, double[] scale, int scaleOffset, double[] shift, int shiftOffset,
+                          double eps, double[] out, int outOffset, int length) {
+        int bound = D.loopBound(length);
+        DoubleVector vsum = DoubleVector.zero(D);
+        int i = 0;
+        for (; i < bound; i += D.length()) {
+            vsum = vsum.add(DoubleVector.fromArray(D, x, xOffset + i));
+        }
+        double sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i];
+        }
+        double mean = sum / length;
+
+        DoubleVector vsq = DoubleVector.zero(D);
+        for (i = 0; i < bound; i += D.length()) {
+            DoubleVector diff = DoubleVector.fromArray(D, x, xOffset + i).sub(mean);
+            vsq = diff.fma(diff, vsq);
+        }
+        double sq = vsq.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double diff = x[xOffset + i] - mean;
+            sq += diff * diff;
+        }
+        double inv = 1.0 / Math.sqrt(sq / length + eps);
+
+        for (i = 0; i < bound; i += D.length()) {
+            DoubleVector norm = DoubleVector.fromArray(D, x, xOffset + i).sub(mean).mul(inv);
+            norm.fma(DoubleVector.fromArray(D, scale, scaleOffset + i), DoubleVector.fromArray(D, shift, shiftOffset + i))
+                .intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = (x[xOffset + i] - mean) * inv * scale[scaleOffset + i] + shift[shiftOffset + i];
+        }
+    }
+
+    @Override
+    public void layerNorm(float[] x, int xOffset, float[] scale, int scaleOffset, float[] shift, int shiftOffset,
+                          float eps, float[] out, int outOffset, int length) {
+        int bound = F.loopBound(length);
+        FloatVector vsum = FloatVector.zero(F);
+        int i = 0;
+        for (; i < bound; i += F.length()) {
+            vsum = vsum.add(FloatVector.fromArray(F, x, xOffset + i));
+        }
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += x[xOffset + i];
+        }
+        float mean = sum / length;
+
+        FloatVector vsq = FloatVector.zero(F);
+        for (i = 0; i < bound; i += F.length()) {
+            FloatVector diff = FloatVector.fromArray(F, x, xOffset + i).sub(mean);
+            vsq = diff.fma(diff, vsq);
+        }
+        float sq = vsq.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = x[xOffset + i] - mean;
+            sq += diff * diff;
+        }
+        float inv = (float) (1.0 / Math.sqrt(sq / length + eps));
+
+        for (i = 0; i < bound; i += F.length()) {
+            FloatVector norm = FloatVector.fromArray(F, x, xOffset + i).sub(mean).mul(inv);
+            norm.fma(FloatVector.fromArray(F, scale, scaleOffset + i), FloatVector.fromArray(F, shift, shiftOffset + i))
+                .intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = (x[xOffset + i] - mean) * inv * scale[scaleOffset + i] + shift[shiftOffset + i];
+        }
+    }
+
+    @Override
+    public void gelu(double[] x, int xOffset, double[] out, int outOffset, int length) {
+        int i = 0;
+        for (int bound = D.loopBound(length); i < bound; i += D.length()) {
+            DoubleVector v = DoubleVector.fromArray(D, x, xOffset + i);
+            DoubleVector inner = v.mul(v).mul(v).mul(0.044715).add(v).mul(SQRT_2_OVER_PI);
+            v.mul(0.5).mul(inner.lanewise(VectorOperators.TANH).add(1.0)).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            double v = x[xOffset + i];
+            double inner = (v + 0.044715 * v * v * v) * SQRT_2_OVER_PI;
+            out[outOffset + i] = 0.5 * v * (1.0 + Math.tanh(inner));
+        }
+    }
+
+    @Override
+    public void gelu(float[] x, int xOffset, float[] out, int outOffset, int length) {
+        float c = (float) SQRT_2_OVER_PI;
+        int i = 0;
+        for (int bound = F.loopBound(length); i < bound; i += F.length()) {
+            FloatVector v = FloatVector.fromArray(F, x, xOffset + i);
+            FloatVector inner = v.mul(v).mul(v).mul(0.044715f).add(v).mul(c);
+            v.mul(0.5f).mul(inner.lanewise(VectorOperators.TANH).add(1.0f)).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            float v = x[xOffset + i];
+            float inner = (v + 0.044715f * v * v * v) * c;
+            out[outOffset + i] = 0.5f * v * (1.0f + (float) Math.tanh(inner));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+import java.io.IOException;
+import java.util.Map;
+
+// A checkpoint format that can copy its tensors straight into the model's storage.
+// parameters maps GPT-2 names (wte.weight, h.0.attn.c_attn.weight, ...) to views of
+// the layer buffers in the checkpoint's shape, see GPTModel.namedParameters().
+public interface WeightSource {
+    void readInto(Map<String, Tensor> parameters) throws IOException;
+}
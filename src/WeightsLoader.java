@@ -2,6 +2,8 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.io.FileReader;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -85,9 +87,61 @@ public class WeightsLoader {
         return array;
     }
 
+    // Fills a tensor (or view) with the same random values used for missing weights
+    public static void fillRandom(Tensor target) {
+        Tensor values = new Tensor(target.precision(), target.shape());
+        for (int i = 0; i < values.numel(); i++) {
+            values.setFlat(i, randomDouble());
+        }
+        target.copyFrom(values);
+    }
+
     // Helper method to generate a random double value
-    private static double randomDouble() {
+    static double randomDouble() {
         Random random = new Random();
         return random.nextGaussian() * 0.02; // Using standard deviation similar to typical weight initialization
     }
+
+    // Builds a seeded random weights map with the same names and nesting as gpt2_weights.json,
+    // so several models can be loaded with identical synthetic weights
+    public static Map<String, Object> randomWeights(int vocabSize, int embDim, int contextLength, int numLayers, long seed) {
+        Random random = new Random(seed);
+        Map<String, Object> weights = new HashMap<>();
+        weights.put("wte.weight", randomList(vocabSize, embDim, random));
+        weights.put("wpe.weight", randomList(contextLength, embDim, random));
+        weights.put("ln_f.weight", randomList(embDim, random, 1.0));
+        weights.put("ln_f.bias", randomList(embDim, random, 0.0));
+        for (int i = 0; i < numLayers; i++) {
+            String prefix = "h." + i + ".";
+            weights.put(prefix + "ln_1.weight", randomList(embDim, random, 1.0));
+            weights.put(prefix + "ln_1.bias", randomList(embDim, random, 0.0));
+            weights.put(prefix + "attn.c_attn.weight", randomList(embDim, embDim * 3, random));
+            weights.put(prefix + "attn.c_attn.bias", randomList(embDim * 3, random, 0.0));
+            weights.put(prefix + "attn.c_proj.weight", randomList(embDim, embDim, random));
+            weights.put(prefix + "attn.c_proj.bias", randomList(embDim, random, 0.0));
+            weights.put(prefix + "ln_2.weight", randomList(embDim, random, 1.0));
+            weights.put(prefix + "ln_2.bias", randomList(embDim, random, 0.0));
+            weights.put(prefix + "mlp.c_fc.weight", randomList(embDim, embDim * 4, random));
+            weights.put(prefix + "mlp.c_fc.bias", randomList(embDim * 4, random, 0.0));
+            weights.put(prefix + "mlp.c_proj.weight", randomList(embDim * 4, embDim, random));
+            weights.put(prefix + "mlp.c_proj.bias", randomList(embDim, random, 0.0));
+        }
+        return weights;
+    }
+
+    private static List<Object> randomList(int rows, int cols, Random random) {
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            list.add(randomList(cols, random, 0.0));
+        }
+        return list;
+    }
+
+    private static List<Object> randomList(int size, Random random, double mean) {
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(mean + random.nextGaussian() * 0.1);
+        }
+        return list;
+    }
 }
@@ -0,0 +1,178 @@
+// Preallocated activation buffers for one forward pass at a time: the residual stream, LayerNorm
+// output, Q/K/V, attention context and output, the MLP hidden layer and the logits. Every layer
+// writes into the same buffers, and a session keeps its workspace across tokens, so steady-state
+// decoding allocates no activations. Buffers grow (at least doubling) when a longer batch arrives
+// and never shrink. Views for the current row count are cached, so repeated calls with the same
+// number of rows (e.g. one token per decode step) do not even allocate views.
+public class Workspace {
+    private final int embDim;
+    private final int vocabSize;
+    private final Precision precision;
+    private int capacity;      // rows of the activation storage
+    private int logitCapacity; // rows of the logit storage
+    private int rows = -1;
+    private int logitRows = -1;
+    private int[] tokens = new int[0];
+    // Per-sequence cache arguments and attention slices, refilled by every layer
+    private Matrix[] keyCaches = new Matrix[0];
+    private Matrix[] valueCaches = new Matrix[0];
+    private int[] pastLengths = new int[0];
+    private final CausalAttention.Batch attentionBatch = new CausalAttention.Batch();
+
+    private Matrix hiddenStorage;      // (capacity, embDim), the residual stream
+    private Matrix normedStorage;      // (capacity, embDim)
+    private Matrix qkvStorage;         // (capacity, 3 * embDim)
+    private Matrix contextStorage;     // (capacity, embDim), concatenated heads
+    private Matrix attentionStorage;   // (capacity, embDim), attention output and first residual
+    private Matrix feedForwardStorage; // (capacity, 4 * embDim)
+    private Matrix logitStorage;       // (logitCapacity, vocabSize)
+    private Matrix lastStorage;        // (logitCapacity, embDim), last position of each sequence
+
+    private Matrix hidden;
+    private Matrix normed;
+    private Matrix query;
+    private Matrix key;
+    private Matrix value;
+    private Matrix context;
+    private Matrix attention;
+    private Matrix feedForward;
+    private Matrix logits;
+    private Matrix last;
+
+    public Workspace(int embDim, int vocabSize, Precision precision) {
+        this.embDim = embDim;
+        this.vocabSize = vocabSize;
+        this.precision = precision;
+    }
+
+    // Prepares views for rows packed positions, growing the storage if needed
+    public Workspace setRows(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("A forward pass needs at least one row.");
+        }
+        if (rows == this.rows) {
+            return this;
+        }
+        if (rows > capacity) {
+            capacity = Math.max(rows, 2 * capacity);
+            hiddenStorage = new Matrix(capacity, embDim, precision);
+            normedStorage = new Matrix(capacity, embDim, precision);
+            qkvStorage = new Matrix(capacity, 3 * embDim, precision);
+            contextStorage = new Matrix(capacity, embDim, precision);
+            attentionStorage = new Matrix(capacity, embDim, precision);
+            feedForwardStorage = new Matrix(capacity, 4 * embDim, precision);
+            tokens = new int[capacity];
+        }
+        this.rows = rows;
+        hidden = hiddenStorage.getSubMatrix(0, rows, 0, embDim);
+        normed = normedStorage.getSubMatrix(0, rows, 0, embDim);
+        query = qkvStorage.getSubMatrix(0, rows, 0, embDim);
+        key = qkvStorage.getSubMatrix(0, rows, embDim, 2 * embDim);
+        value = qkvStorage.getSubMatrix(0, rows, 2 * embDim, 3 * embDim);
+        context = contextStorage.getSubMatrix(0, rows, 0, embDim);
+        attention = attentionStorage.getSubMatrix(0, rows, 0, embDim);
+        feedForward = feedForwardStorage.getSubMatrix(0, rows, 0, 4 * embDim);
+        return this;
+    }
+
+    // Prepares the logit views for rows scored positions, growing the storage if needed
+    public Workspace setLogitRows(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("At least one position must be scored.");
+        }
+        if (rows == logitRows) {
+            return this;
+        }
+        if (rows > logitCapacity) {
+            logitCapacity = Math.max(rows, 2 * logitCapacity);
+            logitStorage = new Matrix(logitCapacity, vocabSize, precision);
+            lastStorage = new Matrix(logitCapacity, embDim, precision);
+        }
+        logitRows = rows;
+        logits = logitStorage.getSubMatrix(0, rows, 0, vocabSize);
+        last = lastStorage.getSubMatrix(0, rows, 0, embDim);
+        return this;
+    }
+
+    // Sizes the per-sequence cache arrays for sequences sequences, reallocating only when the count changes
+    public Workspace setSequences(int sequences) {
+        if (sequences != pastLengths.length) {
+            keyCaches = new Matrix[sequences];
+            valueCaches = new Matrix[sequences];
+            pastLengths = new int[sequences];
+        }
+        return this;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Bytes held by the buffers
+    public long bytes() {
+        int element = precision == Precision.FLOAT32 ? 4 : 8;
+        return (long) capacity * 11 * embDim * element + (long) logitCapacity * (vocabSize + embDim) * element
+               + 4L * tokens.length;
+    }
+
+    // Token ids of the packed batch, at least rows long
+    public int[] tokens() {
+        return tokens;
+    }
+
+    public Matrix hidden() {
+        return hidden;
+    }
+
+    public Matrix normed() {
+        return normed;
+    }
+
+    public Matrix query() {
+        return query;
+    }
+
+    public Matrix key() {
+        return key;
+    }
+
+    public Matrix value() {
+        return value;
+    }
+
+    public Matrix context() {
+        return context;
+    }
+
+    public Matrix attention() {
+        return attention;
+    }
+
+    public Matrix feedForward() {
+        return feedForward;
+    }
+
+    public Matrix logits() {
+        return logits;
+    }
+
+    public Matrix last() {
+        return last;
+    }
+
+    public Matrix[] keyCaches() {
+        return keyCaches;
+    }
+
+    public Matrix[] valueCaches() {
+        return valueCaches;
+    }
+
+    public int[] pastLengths() {
+        return pastLengths;
+    }
+
+    CausalAttention.Batch attentionBatch() {
+        return attentionBatch;
+    }
+}
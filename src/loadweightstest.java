@@ -1,16 +1,11 @@
-import java.util.Map;
-
 public class loadweightstest {
     public static void main(String[] args) {
         System.out.println("Starting weight loading test...");
 
         try {
-            // Path to your weights file
-            String weightsFilePath = "gpt2_weights.json";
-
-            // Load weights
-            System.out.println("Loading model weights...");
-            Map<String, Object> weightsMap = WeightsLoader.loadWeights(weightsFilePath);
+            // Path to your weights file (.json, or a HuggingFace .safetensors file)
+            String weightsFilePath = args.length > 0 ? args[0] : "gpt2_weights.json";
+            long start = System.nanoTime();
 
             // Initialize model parameters (use GPT-2 small specs)
             int vocabSize = 50257;
@@ -25,7 +20,12 @@ public class loadweightstest {
 
             // Load weights into the model
             System.out.println("Loading weights into the model...");
-            model.loadWeights(weightsMap);
+            if (weightsFilePath.endsWith(".safetensors")) {
+                model.loadWeights(new SafetensorsLoader(weightsFilePath));
+            } else {
+                model.loadWeights(new JsonWeightsLoader(weightsFilePath));
+            }
+            System.out.println("Load time: " + (System.nanoTime() - start) / 1_000_000 + " ms");
 
             System.out.println("Weights successfully loaded into the model!");
         } catch (OutOfMemoryError e) {